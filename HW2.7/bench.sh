@@ -0,0 +1,11 @@
+#!/bin/bash
+
+# JMH benchmarks, lib must contain jmh-core, jmh-generator-annprocess, jopt-simple and commons-math3.
+# Results are written to bench.json, extra arguments are passed to JMH (e.g. "ListIPBenchmark.map -p size=1000").
+# Common pool backend of ListIPBenchmark ignores threads and is run separately: "ListIPBenchmark -p backend=stream -p threads=1".
+# Common pool baseline of ParallelMapperBenchmark is ParallelStreamBenchmark, which has no threads parameter.
+
+rm -rf out/bench
+mkdir -p out/bench
+javac -d out/bench -cp "./ParallelMapperTest.jar:./lib/*" $(find src bench -name "*.java") || exit 1
+java -cp "./out/bench:./ParallelMapperTest.jar:./lib/*" org.openjdk.jmh.Main -rf json -rff bench.json "$@"
@@ -0,0 +1,151 @@
+package ru.ifmo.ctddev.zemskov.mapper.bench;
+
+import info.kgeorgiy.java.advanced.concurrent.ListIP;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.ifmo.ctddev.zemskov.mapper.IterativeParallelism;
+import ru.ifmo.ctddev.zemskov.mapper.ParallelMapperImpl;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmarks of every {@link ListIP} operation for different list sizes, numbers of threads
+ * and costs of applied functions.
+ * <p>
+ * {@code backend} selects implementation:
+ * <ul>
+ * <li>{@code threads} - {@link IterativeParallelism} creating own threads</li>
+ * <li>{@code mapper} - {@link IterativeParallelism} over {@link ParallelMapperImpl}</li>
+ * <li>{@code stream} - {@code parallelStream()} in common pool</li>
+ * <li>{@code forkjoin} - {@code parallelStream()} in {@link ForkJoinPool} with {@code threads} parallelism</li>
+ * </ul>
+ * {@code stream} ignores {@code threads}, so it isn't run by default, otherwise every its row would repeat
+ * the same measurement. It is measured once with {@code -p backend=stream -p threads=1}.
+ *
+ * @author Kirill Zemskov
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListIPBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    /**
+     * Cost of every applied function or predicate in {@link Blackhole#consumeCPU(long)} tokens.
+     */
+    @Param({"0", "100"})
+    public long cost;
+
+    @Param({"threads", "mapper", "forkjoin"})
+    public String backend;
+
+    private List<Integer> list;
+    private ListIP ip;
+    private ParallelMapperImpl mapper;
+    private ForkJoinPool pool;
+    private Predicate<Integer> even;
+    private Predicate<Integer> negative;
+    private Function<Integer, Integer> square;
+    private Comparator<Integer> comparator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        list = new Random(size).ints(size).boxed().collect(Collectors.toList());
+        switch (backend) {
+            case "threads":
+                ip = new IterativeParallelism();
+                break;
+            case "mapper":
+                mapper = new ParallelMapperImpl(threads);
+                ip = new IterativeParallelism(mapper);
+                break;
+            case "stream":
+                ip = new StreamListIP(null);
+                break;
+            case "forkjoin":
+                pool = new ForkJoinPool(threads);
+                ip = new StreamListIP(pool);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown backend: " + backend);
+        }
+        long tokens = cost;
+        even = value -> {
+            Blackhole.consumeCPU(tokens);
+            return value % 2 == 0;
+        };
+        negative = value -> {
+            Blackhole.consumeCPU(tokens);
+            return value < Integer.MIN_VALUE / 2;
+        };
+        square = value -> {
+            Blackhole.consumeCPU(tokens);
+            return value * value;
+        };
+        comparator = (a, b) -> {
+            Blackhole.consumeCPU(tokens);
+            return Integer.compare(a, b);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        if (mapper != null) {
+            mapper.close();
+            mapper = null;
+        }
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+
+    @Benchmark
+    public String join() throws InterruptedException {
+        return ip.join(threads, list);
+    }
+
+    @Benchmark
+    public List<Integer> filter() throws InterruptedException {
+        return ip.filter(threads, list, even);
+    }
+
+    @Benchmark
+    public List<Integer> map() throws InterruptedException {
+        return ip.map(threads, list, square);
+    }
+
+    @Benchmark
+    public Integer maximum() throws InterruptedException {
+        return ip.maximum(threads, list, comparator);
+    }
+
+    @Benchmark
+    public Integer minimum() throws InterruptedException {
+        return ip.minimum(threads, list, comparator);
+    }
+
+    @Benchmark
+    public boolean all() throws InterruptedException {
+        return ip.all(threads, list, negative.negate());
+    }
+
+    @Benchmark
+    public boolean any() throws InterruptedException {
+        return ip.any(threads, list, negative);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.ifmo.ctddev.zemskov.mapper.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.ifmo.ctddev.zemskov.mapper.ParallelMapperImpl;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmarks of {@link ParallelMapperImpl#map(Function, List)} against {@code parallelStream()}
+ * in {@link ForkJoinPool} with the same number of threads. {@code parallelStream()} in common pool
+ * doesn't depend on {@code threads}, so it is measured once by {@link ParallelStreamBenchmark}.
+ *
+ * @author Kirill Zemskov
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelMapperBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    /**
+     * Cost of every function application in {@link Blackhole#consumeCPU(long)} tokens.
+     */
+    @Param({"0", "100", "10000"})
+    public long cost;
+
+    private List<Integer> list;
+    private ParallelMapperImpl mapper;
+    private ForkJoinPool pool;
+    private Function<Integer, Integer> function;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        list = new Random(size).ints(size).boxed().collect(Collectors.toList());
+        mapper = new ParallelMapperImpl(threads);
+        pool = new ForkJoinPool(threads);
+        long tokens = cost;
+        function = value -> {
+            Blackhole.consumeCPU(tokens);
+            return value + 1;
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        mapper.close();
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public List<Integer> parallelMapper() throws InterruptedException {
+        return mapper.map(function, list);
+    }
+
+    @Benchmark
+    public List<Integer> forkJoin() throws InterruptedException, ExecutionException {
+        return pool.submit(() -> list.parallelStream().map(function).collect(Collectors.toList())).get();
+    }
+}
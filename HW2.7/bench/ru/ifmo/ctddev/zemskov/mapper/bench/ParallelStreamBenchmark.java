@@ -0,0 +1,51 @@
+package ru.ifmo.ctddev.zemskov.mapper.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Baseline for {@link ParallelMapperBenchmark}: {@code parallelStream()} in common pool with the same
+ * lists and functions. Parallelism of common pool is fixed, so there is no {@code threads} parameter.
+ *
+ * @author Kirill Zemskov
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelStreamBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    /**
+     * Cost of every function application in {@link Blackhole#consumeCPU(long)} tokens.
+     */
+    @Param({"0", "100", "10000"})
+    public long cost;
+
+    private List<Integer> list;
+    private Function<Integer, Integer> function;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        list = new Random(size).ints(size).boxed().collect(Collectors.toList());
+        long tokens = cost;
+        function = value -> {
+            Blackhole.consumeCPU(tokens);
+            return value + 1;
+        };
+    }
+
+    @Benchmark
+    public List<Integer> parallelStream() {
+        return list.parallelStream().map(function).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,77 @@
+package ru.ifmo.ctddev.zemskov.mapper.bench;
+
+import info.kgeorgiy.java.advanced.concurrent.ListIP;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Baseline implementation of {@link ListIP} on top of {@code parallelStream()}.
+ * If pool is given, streams are run inside of it, so their parallelism is bounded
+ * by parallelism of the pool, otherwise common pool is used and number of threads is ignored.
+ *
+ * @author Kirill Zemskov
+ */
+class StreamListIP implements ListIP {
+    private final ForkJoinPool pool;
+
+    StreamListIP(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public String join(int i, List<?> list) throws InterruptedException {
+        return run(() -> list.parallelStream().map(Object::toString).collect(Collectors.joining()));
+    }
+
+    @Override
+    public <T> List<T> filter(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
+        return run(() -> list.parallelStream().filter(predicate).collect(Collectors.<T>toList()));
+    }
+
+    @Override
+    public <T, U> List<U> map(int i, List<? extends T> list, Function<? super T, ? extends U> function) throws InterruptedException {
+        return run(() -> list.parallelStream().map(function).collect(Collectors.<U>toList()));
+    }
+
+    @Override
+    public <T> T maximum(int i, List<? extends T> list, Comparator<? super T> comparator) throws InterruptedException {
+        return run(() -> list.parallelStream().max(comparator).get());
+    }
+
+    @Override
+    public <T> T minimum(int i, List<? extends T> list, Comparator<? super T> comparator) throws InterruptedException {
+        return run(() -> list.parallelStream().min(comparator).get());
+    }
+
+    @Override
+    public <T> boolean all(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
+        return run(() -> list.parallelStream().allMatch(predicate));
+    }
+
+    @Override
+    public <T> boolean any(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
+        return run(() -> list.parallelStream().anyMatch(predicate));
+    }
+
+    private <R> R run(Callable<R> task) throws InterruptedException {
+        if (pool == null) {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        try {
+            return pool.submit(task).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * JMH benchmarks of {@link ru.ifmo.ctddev.zemskov.mapper.IterativeParallelism}
+ * and {@link ru.ifmo.ctddev.zemskov.mapper.ParallelMapperImpl}
+ */
+package ru.ifmo.ctddev.zemskov.mapper.bench;
@@ -6,10 +6,17 @@ import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static java.util.stream.Collectors.toList;
 
@@ -141,6 +148,148 @@ public class IterativeParallelism implements ListIP {
         return executeParalleled(i, list, data -> data.stream().anyMatch(predicate)).stream().anyMatch(Predicate.isEqual(true));
     }
 
+    /**
+     * Compute inclusive prefix scan in parallel threads.
+     * <p>
+     * First pass folds every chunk independently, then offsets of chunks are accumulated
+     * and second pass scans every chunk starting from its offset.
+     *
+     * @param i        number of threads
+     * @param list     list with data
+     * @param identity identity element of {@code operator}
+     * @param operator associative operator
+     * @param <T>      used generic
+     * @return list, where k-th element is result of applying operator to first k + 1 elements
+     * @throws InterruptedException when something went wrong in some thread
+     */
+    public <T> List<T> scan(int i, List<? extends T> list, T identity, BinaryOperator<T> operator) throws InterruptedException {
+        List<List<? extends T>> split = split(i, list);
+        List<T> totals = execute(split, data -> {
+            T accumulator = identity;
+            for (T value : data) {
+                accumulator = operator.apply(accumulator, value);
+            }
+            return accumulator;
+        });
+        List<T> offsets = new ArrayList<>(totals.size());
+        T accumulator = identity;
+        for (T total : totals) {
+            offsets.add(accumulator);
+            accumulator = operator.apply(accumulator, total);
+        }
+        List<Integer> chunks = IntStream.range(0, split.size()).boxed().collect(toList());
+        return execute(chunks, chunk -> {
+            List<T> result = new ArrayList<>(split.get(chunk).size());
+            T current = offsets.get(chunk);
+            for (T value : split.get(chunk)) {
+                current = operator.apply(current, value);
+                result.add(current);
+            }
+            return result;
+        }).stream().flatMap(Collection::stream).collect(toList());
+    }
+
+    /**
+     * Stable sort in parallel threads.
+     * <p>
+     * First pass sorts every chunk, then splitters are chosen from regular samples of sorted chunks
+     * and second pass merges in every thread parts of all chunks between two neighbouring splitters.
+     *
+     * @param i          number of threads
+     * @param list       list with data
+     * @param comparator used comparator
+     * @param <T>        used generic
+     * @return new sorted list
+     * @throws InterruptedException when something went wrong in some thread
+     */
+    public <T> List<T> sort(int i, List<? extends T> list, Comparator<? super T> comparator) throws InterruptedException {
+        List<List<T>> runs = executeParalleled(i, list, data -> {
+            List<T> run = new ArrayList<>(data);
+            run.sort(comparator);
+            return run;
+        });
+        if (runs.size() < 2) {
+            return runs.isEmpty() ? new ArrayList<>() : runs.get(0);
+        }
+        List<T> samples = new ArrayList<>();
+        for (List<T> run : runs) {
+            for (int k = 0; k < runs.size(); k++) {
+                samples.add(run.get(k * run.size() / runs.size()));
+            }
+        }
+        samples.sort(comparator);
+        List<T> splitters = new ArrayList<>();
+        for (int k = 1; k < runs.size(); k++) {
+            splitters.add(samples.get(k * runs.size()));
+        }
+        List<Integer> parts = IntStream.range(0, runs.size()).boxed().collect(toList());
+        return execute(parts, part -> {
+            List<List<? extends T>> slices = new ArrayList<>(runs.size());
+            for (List<T> run : runs) {
+                int from = part == 0 ? 0 : lowerBound(run, splitters.get(part - 1), comparator);
+                int to = part == splitters.size() ? run.size() : lowerBound(run, splitters.get(part), comparator);
+                slices.add(run.subList(from, Math.max(from, to)));
+            }
+            return merge(slices, comparator);
+        }).stream().flatMap(Collection::stream).collect(toList());
+    }
+
+    /**
+     * Group elements by key in parallel threads.
+     * <p>
+     * First pass groups every chunk, second pass merges groups, where every thread
+     * is responsible for its own subset of keys.
+     *
+     * @param i          number of threads
+     * @param list       list with data
+     * @param classifier function, which returns key of element
+     * @param <T>        used generic
+     * @param <K>        type of keys
+     * @return map from key to list of elements with that key in order of {@code list}
+     * @throws InterruptedException when something went wrong in some thread
+     */
+    public <T, K> Map<K, List<T>> groupBy(int i, List<? extends T> list, Function<? super T, ? extends K> classifier) throws InterruptedException {
+        return groupParalleled(i, list, classifier, Collectors.toCollection(ArrayList::new), (a, b) -> {
+            a.addAll(b);
+            return a;
+        });
+    }
+
+    /**
+     * Count elements with same key in parallel threads.
+     *
+     * @param i          number of threads
+     * @param list       list with data
+     * @param classifier function, which returns key of element
+     * @param <T>        used generic
+     * @param <K>        type of keys
+     * @return map from key to number of elements with that key
+     * @throws InterruptedException when something went wrong in some thread
+     * @see #groupBy(int, List, Function)
+     */
+    public <T, K> Map<K, Long> histogram(int i, List<? extends T> list, Function<? super T, ? extends K> classifier) throws InterruptedException {
+        return groupParalleled(i, list, classifier, Collectors.counting(), Long::sum);
+    }
+
+    private <T, K, A> Map<K, A> groupParalleled(int i, List<? extends T> list, Function<? super T, ? extends K> classifier,
+                                               Collector<T, ?, A> downstream, BinaryOperator<A> merger) throws InterruptedException {
+        List<Map<K, A>> groups = executeParalleled(i, list, data -> data.stream().collect(Collectors.groupingBy(classifier, downstream)));
+        List<Integer> parts = IntStream.range(0, groups.size()).boxed().collect(toList());
+        Map<K, A> result = new HashMap<>();
+        execute(parts, part -> {
+            Map<K, A> merged = new HashMap<>();
+            for (Map<K, A> group : groups) {
+                group.forEach((key, value) -> {
+                    if (Math.floorMod(Objects.hashCode(key), groups.size()) == part) {
+                        merged.merge(key, value, merger);
+                    }
+                });
+            }
+            return merged;
+        }).forEach(result::putAll);
+        return result;
+    }
+
     private class Runner<T, R> implements Runnable {
         private T list;
         private Function<T, R> function;
@@ -162,6 +311,10 @@ public class IterativeParallelism implements ListIP {
     }
 
     private <T, R> List<R> executeParalleled(int n, List<? extends T> list, Function<List<? extends T>, R> function) throws InterruptedException {
+        return execute(split(n, list), function);
+    }
+
+    private <T> List<List<? extends T>> split(int n, List<? extends T> list) {
         List<List<? extends T>> split = new ArrayList<>();
         int mod = list.size() % n;
         int l = 0;
@@ -175,10 +328,14 @@ public class IterativeParallelism implements ListIP {
             l = r;
             r += list.size() / n;
         }
+        return split;
+    }
+
+    private <S, R> List<R> execute(List<S> tasks, Function<S, R> function) throws InterruptedException {
         if (parallelMapper != null) {
-            return (parallelMapper.map(function, split));
+            return (parallelMapper.map(function, tasks));
         }
-        List<Runner<?, R>> runners = split.stream().map(runner -> new Runner<>(runner, function)).collect(toList());
+        List<Runner<S, R>> runners = tasks.stream().map(task -> new Runner<>(task, function)).collect(toList());
         List<Thread> threads = runners.stream().map(Thread::new).collect(toList());
         threads.forEach(Thread::start);
         try {
@@ -191,4 +348,64 @@ public class IterativeParallelism implements ListIP {
         return runners.stream().map(Runner::getResult).collect(toList());
     }
 
+    private static <T> List<T> merge(List<List<? extends T>> runs, Comparator<? super T> comparator) {
+        PriorityQueue<Cursor<T>> heap = new PriorityQueue<>((a, b) -> {
+            int cmp = comparator.compare(a.peek(), b.peek());
+            return cmp != 0 ? cmp : Integer.compare(a.run, b.run);
+        });
+        int size = 0;
+        for (int run = 0; run < runs.size(); run++) {
+            size += runs.get(run).size();
+            if (!runs.get(run).isEmpty()) {
+                heap.add(new Cursor<>(runs.get(run), run));
+            }
+        }
+        List<T> result = new ArrayList<>(size);
+        while (!heap.isEmpty()) {
+            Cursor<T> cursor = heap.poll();
+            result.add(cursor.next());
+            if (cursor.hasNext()) {
+                heap.add(cursor);
+            }
+        }
+        return result;
+    }
+
+    private static <T> int lowerBound(List<? extends T> list, T key, Comparator<? super T> comparator) {
+        int l = -1;
+        int r = list.size();
+        while (r - l > 1) {
+            int m = (l + r) >>> 1;
+            if (comparator.compare(list.get(m), key) < 0) {
+                l = m;
+            } else {
+                r = m;
+            }
+        }
+        return r;
+    }
+
+    private static class Cursor<T> {
+        private final List<? extends T> list;
+        private final int run;
+        private int position = 0;
+
+        Cursor(List<? extends T> list, int run) {
+            this.list = list;
+            this.run = run;
+        }
+
+        T peek() {
+            return list.get(position);
+        }
+
+        T next() {
+            return list.get(position++);
+        }
+
+        boolean hasNext() {
+            return position < list.size();
+        }
+    }
+
 }
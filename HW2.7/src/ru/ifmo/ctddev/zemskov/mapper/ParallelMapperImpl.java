@@ -6,6 +6,9 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -53,25 +56,59 @@ public class ParallelMapperImpl implements ParallelMapper {
     /**
      * Returns a {@code List} consisting of the results of applying the given
      * {@link java.util.function.Function} to the elements of this {@code List}.
+     * <p>
+     * Calling thread parks only once per call and is woken up by the worker,
+     * which completes the last order.
      *
      * @param function function to apply to elements
      * @param list     list to process
      * @param <T>      Generic type of list data
      * @param <R>      Generic type of return
      * @return the new {@code List}
-     * @throws InterruptedException if some of created threads was interrupted
+     * @throws InterruptedException if calling thread was interrupted while waiting for results,
+     *                              orders of the call, which didn't start yet, are removed
+     * @throws RuntimeException       if function threw exception for some element, exceptions
+     *                                for other elements are added to it as suppressed
+     * @throws Error                  if function threw error for some element, it is rethrown
+     *                                in the same way
      */
     @Override
     public <T, R> List<R> map(Function<? super T, ? extends R> function, List<? extends T> list) throws InterruptedException {
-        Function<? super T, Order<T, R>> pushOrder = (data -> {
-            Order<T, R> order = new Order<>(function, data);
+        Call call = new Call(list.size());
+        List<Order<T, R>> orders = list.stream().map(data -> new Order<T, R>(function, data, call)).collect(Collectors.toList());
+        synchronized (queue) {
+            queue.addAll(orders);
+            queue.notifyAll();
+        }
+        try {
+            call.await();
+        } catch (InterruptedException e) {
             synchronized (queue) {
-                queue.add(order);
-                queue.notify();
+                queue.removeIf(order -> order.call == call);
             }
-            return order;
-        });
-        return list.stream().map(pushOrder).collect(Collectors.toList()).stream().map(Order::get).collect(Collectors.toList());
+            orders.forEach(Order::abort);
+            throw e;
+        }
+        Throwable error = null;
+        for (Order<T, R> order : orders) {
+            if (order.error != null) {
+                if (error == null) {
+                    error = order.error;
+                } else {
+                    error.addSuppressed(order.error);
+                }
+            }
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error != null) {
+            throw new RuntimeException(error);
+        }
+        return orders.stream().map(Order::get).collect(Collectors.toList());
     }
 
     /**
@@ -91,56 +128,106 @@ public class ParallelMapperImpl implements ParallelMapper {
         }
     }
 
-    private class Order<T, R> {
+    private static class Call {
+        private final AtomicInteger remaining;
+        private final Thread caller = Thread.currentThread();
+
+        private Call(int orders) {
+            remaining = new AtomicInteger(orders);
+        }
+
+        private void complete() {
+            if (remaining.decrementAndGet() == 0) {
+                LockSupport.unpark(caller);
+            }
+        }
+
+        private void await() throws InterruptedException {
+            while (remaining.get() > 0) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+    }
+
+    private static class Order<T, R> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Order, Status> STATUS =
+                AtomicReferenceFieldUpdater.newUpdater(Order.class, Status.class, "status");
+
         private final Function<? super T, ? extends R> function;
         private final T argument;
-        private volatile R answer;
-        private volatile Status status;
+        private final Call call;
+        private R answer;
+        private Throwable error;
+        private volatile Status status = Status.NOT_STARTED;
         private volatile Thread runner = null;
 
-        private Order(Function<? super T, ? extends R> function, T argument) {
+        private Order(Function<? super T, ? extends R> function, T argument, Call call) {
             this.function = function;
             this.argument = argument;
-            status = Status.NOT_STARTED;
+            this.call = call;
         }
 
-        private synchronized R get() {
-            while (status != Status.ABORTED && status != Status.READY) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                    return null;
-                }
-            }
-            return answer;
+        /**
+         * Reads answer without locking: {@code answer} is written before {@code status} becomes
+         * {@code READY}, so volatile read of status publishes it. The same holds for {@code error}
+         * and {@code ABORTED}.
+         */
+        private R get() {
+            return status == Status.READY ? answer : null;
         }
 
-        private synchronized void execute() {
-            if (status != Status.NOT_STARTED) {
+        private void execute() {
+            // runner is published before PROCESSING, so cancel, which sees PROCESSING, can interrupt it
+            runner = Thread.currentThread();
+            if (!STATUS.compareAndSet(this, Status.NOT_STARTED, Status.PROCESSING)) {
+                runner = null;
                 return;
             }
-            status = Status.PROCESSING;
-            runner = Thread.currentThread();
             try {
                 answer = function.apply(argument);
-                status = Status.READY;
-                notify();
-            } catch (Exception e) {
-                status = Status.ABORTED;
-                notify();
-                throw e;
+                finish(Status.PROCESSING, Status.READY);
+            } catch (Throwable e) {
+                // rethrown by map, worker keeps executing other orders
+                error = e;
             } finally {
+                finish(Status.PROCESSING, Status.ABORTED);
                 runner = null;
             }
         }
 
-        private synchronized void cancel() {
-            if (status != Status.READY) {
-                status = Status.ABORTED;
+        /**
+         * Aborts order without waiting for running function. Running function is interrupted
+         * and its result, if any, is ignored.
+         */
+        private void cancel() {
+            if (abort()) {
+                return;
+            }
+            Thread thread = runner;
+            if (finish(Status.PROCESSING, Status.ABORTED) && thread != null) {
+                thread.interrupt();
             }
-            if (runner != null) {
-                runner.interrupt();
+        }
+
+        /**
+         * Aborts order, if it didn't start yet.
+         *
+         * @return whether order was aborted
+         */
+        private boolean abort() {
+            return finish(Status.NOT_STARTED, Status.ABORTED);
+        }
+
+        private boolean finish(Status expected, Status result) {
+            if (STATUS.compareAndSet(this, expected, result)) {
+                call.complete();
+                return true;
             }
+            return false;
         }
     }
 }
@@ -0,0 +1,10 @@
+#!/bin/bash
+
+# Usage: bench.sh [benchmark class [arguments]], runs CrawlerBenchmark by default
+
+rm -rf out/bench
+mkdir -p out/bench
+javac -d out/bench -cp "./WebCrawlerTest.jar:./lib/*" $(find src bench -name "*.java") || exit 1
+CLASS=${1:-CrawlerBenchmark}
+shift
+java -cp "./out/bench:./WebCrawlerTest.jar:./lib/*" ru.ifmo.ctddev.zemskov.crawler.bench.$CLASS "$@"
@@ -0,0 +1,86 @@
+package ru.ifmo.ctddev.zemskov.crawler.bench;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+import info.kgeorgiy.java.advanced.crawler.Result;
+import ru.ifmo.ctddev.zemskov.crawler.CrawlerOptions;
+import ru.ifmo.ctddev.zemskov.crawler.WebCrawler;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Compares static and adaptive per-host limits on synthetic web of hosts with different speed
+ * and capacity. Every host serves {@code capacity} downloads at its base latency, every download
+ * over capacity makes all downloads of host slower, and host fails downloads, when it has more than
+ * twice its capacity. Prints number of downloaded pages, errors and pages per second for both limits.
+ * <p>
+ * Usage: AdaptiveBenchmark [pages [hosts [perHost [depth]]]]
+ *
+ * @author Kirill Zemskov
+ */
+public class AdaptiveBenchmark {
+    /**
+     * Runs benchmark.
+     *
+     * @param args array of string arguments, which must match to "Usage"
+     */
+    public static void main(String[] args) {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int hosts = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int perHost = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        for (boolean adaptive : new boolean[]{false, true, false, true}) {
+            MixedHosts web = new MixedHosts(pages, hosts);
+            CrawlerOptions options = new CrawlerOptions().adaptivePerHost(adaptive);
+            try (WebCrawler crawler = new WebCrawler(web, 128, Runtime.getRuntime().availableProcessors(), perHost, options)) {
+                long start = System.nanoTime();
+                Result result = crawler.download(web.url(0), depth);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-8s %8d pages %8d errors %8.2f s %10.1f pages/s%n", adaptive ? "adaptive" : "static",
+                        result.getDownloaded().size(), result.getErrors().size(), seconds,
+                        result.getDownloaded().size() / seconds);
+            }
+        }
+    }
+
+    /**
+     * Hosts with different latency and capacity.
+     */
+    private static class MixedHosts extends LatencyDownloader {
+        private final AtomicIntegerArray running;
+        private final int hosts;
+
+        private MixedHosts(int pages, int hosts) {
+            super(pages, hosts, 10, 0);
+            this.hosts = hosts;
+            running = new AtomicIntegerArray(hosts);
+        }
+
+        private static int capacity(int host) {
+            return host % 4 == 0 ? 2 : 12;
+        }
+
+        @Override
+        protected long latency(int host) {
+            long base = host % 3 == 0 ? 30 : 3;
+            return base * Math.max(1, running.get(host) - capacity(host) + 1);
+        }
+
+        @Override
+        protected boolean fails(int host) {
+            return running.get(host) > 2 * capacity(host);
+        }
+
+        @Override
+        public Document download(String url) throws IOException {
+            int host = Integer.parseInt(url.substring(url.lastIndexOf("/p") + 2)) % hosts;
+            running.incrementAndGet(host);
+            try {
+                return super.download(url);
+            } finally {
+                running.decrementAndGet(host);
+            }
+        }
+    }
+}
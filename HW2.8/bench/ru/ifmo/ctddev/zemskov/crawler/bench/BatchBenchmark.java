@@ -0,0 +1,61 @@
+package ru.ifmo.ctddev.zemskov.crawler.bench;
+
+import info.kgeorgiy.java.advanced.crawler.Result;
+import ru.ifmo.ctddev.zemskov.crawler.CrawlerOptions;
+import ru.ifmo.ctddev.zemskov.crawler.WebCrawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares many small crawls of synthetic web of {@link LatencyDownloader}, made by consecutive
+ * calls of {@link WebCrawler#download(String, int)}, with the same crawls, made by one batch call.
+ * Prints total number of downloaded pages and time for both ways.
+ * <p>
+ * Usage: BatchBenchmark [seeds [depth [latency]]]
+ *
+ * @author Kirill Zemskov
+ */
+public class BatchBenchmark {
+    /**
+     * Runs benchmark.
+     *
+     * @param args array of string arguments, which must match to "Usage"
+     * @throws ExecutionException   if batch crawl failed
+     * @throws InterruptedException if benchmark was interrupted
+     */
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        long latency = args.length > 2 ? Long.parseLong(args[2]) : 5;
+
+        LatencyDownloader web = new LatencyDownloader(100000, 1000, 10, latency);
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < seeds; i++) {
+            urls.add(web.url(i * 97));
+        }
+        CrawlerOptions options = new CrawlerOptions().mode(CrawlerOptions.Mode.PIPELINE).expectedUrls(1024);
+        for (int run = 0; run < 2; run++) {
+            try (WebCrawler crawler = new WebCrawler(web, 64, Runtime.getRuntime().availableProcessors(), 4, options)) {
+                long start = System.nanoTime();
+                long pages = 0;
+                for (String url : urls) {
+                    pages += crawler.download(url, depth).getDownloaded().size();
+                }
+                print("sequential", pages, start);
+
+                start = System.nanoTime();
+                AtomicLong batch = new AtomicLong();
+                crawler.download(urls, depth, (url, result) -> batch.addAndGet(result.getDownloaded().size())).get();
+                print("batch", batch.get(), start);
+            }
+        }
+    }
+
+    private static void print(String name, long pages, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-10s %8d pages %8.2f s %10.1f pages/s%n", name, pages, seconds, pages / seconds);
+    }
+}
@@ -0,0 +1,45 @@
+package ru.ifmo.ctddev.zemskov.crawler.bench;
+
+import info.kgeorgiy.java.advanced.crawler.Result;
+import ru.ifmo.ctddev.zemskov.crawler.CrawlerOptions;
+import ru.ifmo.ctddev.zemskov.crawler.WebCrawler;
+
+/**
+ * Crawls synthetic web of {@link LatencyDownloader} with fixed pool of downloaders
+ * and with download on virtual threads and prints throughput of both.
+ * <p>
+ * Usage: CrawlerBenchmark [pages [hosts [latency [downloaders [perHost [depth]]]]]]
+ *
+ * @author Kirill Zemskov
+ */
+public class CrawlerBenchmark {
+    /**
+     * Runs benchmark.
+     *
+     * @param args array of string arguments, which must match to "Usage"
+     */
+    public static void main(String[] args) {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int hosts = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        long latency = args.length > 2 ? Long.parseLong(args[2]) : 50;
+        int downloaders = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        int perHost = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        int depth = args.length > 5 ? Integer.parseInt(args[5]) : 4;
+
+        LatencyDownloader downloader = new LatencyDownloader(pages, hosts, 10, latency);
+        run("fixed pool", downloader, downloaders, perHost, depth, new CrawlerOptions());
+        run("virtual threads", downloader, downloaders, perHost, depth, new CrawlerOptions().virtualThreads(true));
+    }
+
+    private static void run(String name, LatencyDownloader downloader, int downloaders, int perHost, int depth, CrawlerOptions options) {
+        try (WebCrawler crawler = new WebCrawler(downloader, downloaders, Runtime.getRuntime().availableProcessors(), perHost, options)) {
+            long start = System.nanoTime();
+            Result result = crawler.download(downloader.url(0), depth);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            int downloaded = result.getDownloaded().size();
+            System.out.printf("%-16s %8d pages %8.2f s %10.1f pages/s%n", name, downloaded, seconds, downloaded / seconds);
+        } catch (IllegalStateException e) {
+            System.out.printf("%-16s skipped: %s%n", name, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ru.ifmo.ctddev.zemskov.crawler.bench;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+import info.kgeorgiy.java.advanced.crawler.Downloader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Local stand-in for real {@link Downloader}. Serves synthetic web of {@code pages} pages
+ * spread over {@code hosts} hosts, every page has {@code fanout} links to random pages.
+ * Every download sleeps for latency of page's host.
+ * <p>
+ * Pages are named {@code http://h<host>.test/p<page>}, page {@code p} belongs to host {@code p % hosts}.
+ *
+ * @author Kirill Zemskov
+ */
+public class LatencyDownloader implements Downloader {
+    private final int pages;
+    private final int hosts;
+    private final int fanout;
+    private final long latency;
+
+    /**
+     * Creates downloader.
+     *
+     * @param pages   number of pages in the web
+     * @param hosts   number of hosts
+     * @param fanout  number of links on every page
+     * @param latency latency of every download in milliseconds
+     */
+    public LatencyDownloader(int pages, int hosts, int fanout, long latency) {
+        this.pages = pages;
+        this.hosts = hosts;
+        this.fanout = fanout;
+        this.latency = latency;
+    }
+
+    /**
+     * Returns url of the page.
+     *
+     * @param page number of the page
+     * @return url of the page
+     */
+    public String url(int page) {
+        return "http://h" + page % hosts + ".test/p" + page;
+    }
+
+    /**
+     * Returns latency of downloads from the host. By default it is the same for all hosts.
+     *
+     * @param host number of the host
+     * @return latency in milliseconds
+     */
+    protected long latency(int host) {
+        return latency;
+    }
+
+    /**
+     * Decides whether download from the host fails. By default downloads never fail.
+     *
+     * @param host number of the host
+     * @return {@code true} if download must throw {@link IOException}
+     */
+    protected boolean fails(int host) {
+        return false;
+    }
+
+    @Override
+    public Document download(String url) throws IOException {
+        int page = Integer.parseInt(url.substring(url.lastIndexOf("/p") + 2));
+        int host = page % hosts;
+        try {
+            Thread.sleep(latency(host));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        if (fails(host)) {
+            throw new IOException("Failed to download " + url);
+        }
+        return () -> {
+            Random random = new Random(page);
+            List<String> links = new ArrayList<>(fanout);
+            for (int i = 0; i < fanout; i++) {
+                links.add(url(random.nextInt(pages)));
+            }
+            return links;
+        };
+    }
+}
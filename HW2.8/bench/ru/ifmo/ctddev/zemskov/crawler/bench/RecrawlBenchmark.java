@@ -0,0 +1,48 @@
+package ru.ifmo.ctddev.zemskov.crawler.bench;
+
+import info.kgeorgiy.java.advanced.crawler.Result;
+import ru.ifmo.ctddev.zemskov.crawler.ConditionalDownloader;
+import ru.ifmo.ctddev.zemskov.crawler.WebCrawler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crawls synthetic web of {@link LatencyDownloader} twice through {@link ConditionalDownloader}
+ * and prints time and number of downloads of the first crawl and of the recrawl.
+ * <p>
+ * Usage: RecrawlBenchmark [pages [hosts [latency [depth]]]]
+ *
+ * @author Kirill Zemskov
+ */
+public class RecrawlBenchmark {
+    /**
+     * Runs benchmark.
+     *
+     * @param args array of string arguments, which must match to "Usage"
+     * @throws IOException if cache directory can't be created
+     */
+    public static void main(String[] args) throws IOException {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int hosts = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        long latency = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        LatencyDownloader web = new LatencyDownloader(pages, hosts, 10, latency);
+        Path directory = Files.createTempDirectory("recrawl");
+        ConditionalDownloader downloader = new ConditionalDownloader(web, directory, 256 << 20,
+                TimeUnit.MINUTES.toMillis(10), TimeUnit.DAYS.toMillis(1));
+        for (String name : new String[]{"first crawl", "recrawl"}) {
+            long misses = downloader.getMisses();
+            try (WebCrawler crawler = new WebCrawler(downloader, 64, Runtime.getRuntime().availableProcessors(), 4)) {
+                long start = System.nanoTime();
+                Result result = crawler.download(web.url(0), depth);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-12s %8d pages %8d downloads %8.2f s%n", name, result.getDownloaded().size(),
+                        downloader.getMisses() - misses, seconds);
+            }
+        }
+    }
+}
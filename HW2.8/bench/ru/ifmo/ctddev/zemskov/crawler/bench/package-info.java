@@ -0,0 +1,4 @@
+/**
+ * Benchmarks of {@link ru.ifmo.ctddev.zemskov.crawler.WebCrawler} on synthetic web with artificial latency
+ */
+package ru.ifmo.ctddev.zemskov.crawler.bench;
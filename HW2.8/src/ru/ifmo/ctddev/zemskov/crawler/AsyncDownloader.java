@@ -0,0 +1,24 @@
+package ru.ifmo.ctddev.zemskov.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+import info.kgeorgiy.java.advanced.crawler.Downloader;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link Downloader}, which can download pages without blocking calling thread.
+ * In {@link CrawlerOptions.Mode#PIPELINE} mode {@link WebCrawler} uses {@link #downloadAsync(String)}
+ * instead of occupying thread of download pool for every page.
+ *
+ * @author Kirill Zemskov
+ */
+public interface AsyncDownloader extends Downloader {
+    /**
+     * Starts downloading of the page.
+     *
+     * @param url url of the page
+     * @return future, completed with downloaded document, or exceptionally
+     * with {@link java.io.IOException}, if page can't be downloaded
+     */
+    CompletableFuture<Document> downloadAsync(String url);
+}
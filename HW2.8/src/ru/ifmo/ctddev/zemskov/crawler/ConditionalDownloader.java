@@ -0,0 +1,225 @@
+package ru.ifmo.ctddev.zemskov.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+import info.kgeorgiy.java.advanced.crawler.Downloader;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * {@link Downloader}, which remembers extracted links of pages in size-bounded on-disk cache
+ * and doesn't download pages again while they are fresh. Cache is keyed by normalized URL
+ * and evicts least recently used pages, when its size exceeds capacity.
+ * <p>
+ * {@link Downloader} doesn't expose response headers, so freshness is decided by content hash
+ * of extracted links: every page is fresh for its age after it was fetched. If page didn't change
+ * since the previous fetch, its age is doubled up to {@code maxAge}, otherwise it is reset to {@code minAge}.
+ * <p>
+ * For fresh page neither download, nor link extraction of the wrapped downloader is performed.
+ * Page, which links were never extracted, is downloaded again, so every download happens inside
+ * {@link #download(String)} and is limited by the crawler as any other download.
+ *
+ * @author Kirill Zemskov
+ */
+public class ConditionalDownloader implements Downloader {
+    private static final int UNKNOWN = -1;
+
+    private final Downloader downloader;
+    private final Path directory;
+    private final long capacity;
+    private final long minAge;
+    private final long maxAge;
+    private final LinkedHashMap<Long, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long size = 0;
+
+    private static class Entry {
+        private final long fetched;
+        private final long age;
+        private final long hash;
+        private final long bytes;
+
+        private Entry(long fetched, long age, long hash, long bytes) {
+            this.fetched = fetched;
+            this.age = age;
+            this.hash = hash;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Creates cache in {@code directory}. Pages, cached in the directory before, are loaded to the cache.
+     *
+     * @param downloader downloader of pages, which aren't fresh
+     * @param directory  directory to store cache in
+     * @param capacity   maximal total size of cached pages in bytes
+     * @param minAge     age of new or changed page in milliseconds
+     * @param maxAge     maximal age of unchanged page in milliseconds
+     * @throws IOException if directory can't be read or created
+     */
+    public ConditionalDownloader(Downloader downloader, Path directory, long capacity, long minAge, long maxAge) throws IOException {
+        this.downloader = downloader;
+        this.directory = Files.createDirectories(directory);
+        this.capacity = capacity;
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+        load();
+    }
+
+    /**
+     * Returns document of the page from the cache if it is fresh, otherwise downloads it.
+     *
+     * @param url url of the page
+     * @return document of the page
+     * @throws IOException if page can't be downloaded
+     */
+    @Override
+    public Document download(String url) throws IOException {
+        long key = VisitedSet.fingerprint(VisitedSet.normalize(url));
+        Entry entry;
+        synchronized (this) {
+            entry = index.get(key);
+        }
+        if (entry != null && System.currentTimeMillis() - entry.fetched < entry.age) {
+            List<String> links = read(key);
+            if (links != null) {
+                hits.incrementAndGet();
+                return () -> links;
+            }
+        }
+        misses.incrementAndGet();
+        return fetch(url, key);
+    }
+
+    /**
+     * Returns number of pages, which weren't downloaded because they were fresh.
+     *
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns number of pages, which were downloaded.
+     *
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private Document fetch(String url, long key) throws IOException {
+        Document document = downloader.download(url);
+        boolean known;
+        synchronized (this) {
+            known = index.containsKey(key);
+        }
+        if (!known) {
+            store(key, null);
+        }
+        return () -> {
+            List<String> links = document.extractLinks();
+            store(key, links);
+            return links;
+        };
+    }
+
+    private void store(long key, List<String> links) {
+        long hash = links == null ? UNKNOWN : hash(links);
+        Entry previous;
+        synchronized (this) {
+            previous = index.get(key);
+        }
+        long age = previous != null && previous.hash == hash && hash != UNKNOWN ? Math.min(maxAge, previous.age * 2) : minAge;
+        long fetched = System.currentTimeMillis();
+        Path file = file(key);
+        try {
+            Path temp = Files.createTempFile(directory, "page", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeLong(fetched);
+                out.writeLong(age);
+                out.writeLong(hash);
+                out.writeInt(links == null ? UNKNOWN : links.size());
+                if (links != null) {
+                    for (String link : links) {
+                        out.writeUTF(link);
+                    }
+                }
+            }
+            long bytes = Files.size(temp);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            put(key, new Entry(fetched, age, hash, bytes));
+        } catch (IOException e) {
+            System.err.println("Couldn't cache page: " + e.getMessage());
+        }
+    }
+
+    private synchronized void put(long key, Entry entry) throws IOException {
+        Entry old = index.put(key, entry);
+        if (old != null) {
+            size -= old.bytes;
+        }
+        size += entry.bytes;
+        Iterator<Map.Entry<Long, Entry>> iterator = index.entrySet().iterator();
+        while (size > capacity && iterator.hasNext()) {
+            Map.Entry<Long, Entry> eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue().bytes;
+            Files.deleteIfExists(file(eldest.getKey()));
+        }
+    }
+
+    private List<String> read(long key) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file(key))))) {
+            in.readLong();
+            in.readLong();
+            in.readLong();
+            int count = in.readInt();
+            if (count == UNKNOWN) {
+                return null;
+            }
+            List<String> links = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                links.add(in.readUTF());
+            }
+            return links;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void load() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = new ArrayList<>();
+            stream.filter(path -> path.getFileName().toString().endsWith(".page")).forEach(files::add);
+        }
+        files.sort(Comparator.comparing(path -> path.toFile().lastModified()));
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                long key = Long.parseUnsignedLong(name.substring(0, name.length() - ".page".length()), 16);
+                put(key, new Entry(in.readLong(), in.readLong(), in.readLong(), Files.size(file)));
+            } catch (IOException | NumberFormatException e) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private Path file(long key) {
+        return directory.resolve(String.format("%016x.page", key));
+    }
+
+    private static long hash(List<String> links) {
+        long hash = 0;
+        for (String link : links) {
+            hash = hash * 31 + VisitedSet.fingerprint(link);
+        }
+        return hash == UNKNOWN ? 0 : hash;
+    }
+}
@@ -0,0 +1,68 @@
+package ru.ifmo.ctddev.zemskov.crawler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket of CPU time. Work, which is limited by budget, waits in {@link #acquire()} until
+ * CPU time, spent by previous work, is refilled at rate of {@code cores} processors, so in average
+ * such work uses no more than {@code cores} processors, however many threads perform it.
+ *
+ * @author Kirill Zemskov
+ */
+class CpuBudget {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final long BURST = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final double cores;
+    private long available;
+    private long refilled = System.nanoTime();
+
+    /**
+     * Creates budget.
+     *
+     * @param cores average number of processors, which can be used
+     */
+    CpuBudget(double cores) {
+        this.cores = cores;
+        available = (long) (BURST * cores);
+    }
+
+    /**
+     * Waits until budget isn't exhausted.
+     *
+     * @throws InterruptedException if thread was interrupted while waiting
+     */
+    void acquire() throws InterruptedException {
+        long debt;
+        while ((debt = debt()) > 0) {
+            TimeUnit.NANOSECONDS.sleep((long) (debt / cores));
+        }
+    }
+
+    /**
+     * Returns CPU time of the current thread, if it is supported, or wall clock time otherwise.
+     *
+     * @return current time in nanoseconds
+     */
+    long time() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Charges budget for spent CPU time.
+     *
+     * @param nanos spent time in nanoseconds
+     */
+    synchronized void charge(long nanos) {
+        available -= nanos;
+    }
+
+    private synchronized long debt() {
+        long now = System.nanoTime();
+        available = Math.min((long) (BURST * cores), available + (long) ((now - refilled) * cores));
+        refilled = now;
+        return -available;
+    }
+}
@@ -0,0 +1,363 @@
+package ru.ifmo.ctddev.zemskov.crawler;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of one crawl. Records about enqueued, downloaded, extracted and failed pages
+ * are appended to in-memory batch, which is written and forced to disk every {@code interval}
+ * milliseconds by background thread, so recording a page costs only a short append to the batch.
+ * Background thread is shared by all journals of crawler.
+ * <p>
+ * Every batch is written with its length and CRC32, so batch, which was written partially
+ * before crash, is ignored on replay. Journal is truncated to the last valid batch.
+ * <p>
+ * When journal grows twice since the last compaction and is larger than {@value #COMPACTION_THRESHOLD} bytes,
+ * it is compacted: background thread replays it and writes snapshot of the recorded state, where every page
+ * is written once with its best depth, to temporary file, which atomically replaces journal.
+ * So repeated records don't accumulate, and crash during compaction leaves either old or new journal.
+ *
+ * @author Kirill Zemskov
+ */
+class CrawlJournal implements Closeable {
+    private static final byte ENQUEUED = 1;
+    private static final byte DOWNLOADED = 2;
+    private static final byte EXTRACTED = 3;
+    private static final byte FAILED = 4;
+    private static final byte PAGE = 5;
+    private static final byte PAGE_DOWNLOADED = 1;
+    private static final byte PAGE_EXTRACTED = 2;
+    private static final long COMPACTION_THRESHOLD = 1 << 22;
+    private static final int SNAPSHOT_BATCH = 1 << 16;
+
+    private final Path file;
+    private final ScheduledFuture<?> flushing;
+    /**
+     * Lock of writes to the journal file, guards channel, which is reopened by compaction
+     */
+    private final Object lock = new Object();
+    private FileChannel channel;
+    private boolean closed;
+    private long compacted;
+    private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private DataOutputStream batch = new DataOutputStream(bytes);
+
+    /**
+     * State of crawl, restored from journal.
+     */
+    static class Replay {
+        /**
+         * Best known depth of every enqueued page
+         */
+        final Map<String, Integer> depths = new HashMap<>();
+        /**
+         * Downloaded pages
+         */
+        final Set<String> downloaded = new HashSet<>();
+        /**
+         * Pages, which links were enqueued
+         */
+        final Set<String> extracted = new HashSet<>();
+        /**
+         * Pages, which couldn't be downloaded or extracted
+         */
+        final Map<String, IOException> errors = new HashMap<>();
+    }
+
+    private CrawlJournal(Path file, ScheduledExecutorService flusher, long interval) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        compacted = channel.size();
+        try {
+            flushing = flusher.scheduleWithFixedDelay(() -> {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    System.err.println("Couldn't write crawl journal: " + e.getMessage());
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens journal of crawl, starting from {@code url} with given {@code depth}, in {@code directory}
+     * and replays it, if it exists.
+     *
+     * @param directory directory with journals
+     * @param url       start url of the crawl
+     * @param depth     maximal depth of the crawl
+     * @param flusher   executor, which writes journal to disk
+     * @param interval  interval between writes to disk in milliseconds
+     * @param replay    state to restore crawl to
+     * @return opened journal
+     * @throws IOException if journal can't be read or created
+     */
+    static CrawlJournal open(Path directory, String url, int depth, ScheduledExecutorService flusher, long interval,
+                             Replay replay) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(String.format("crawl-%016x-%d.journal", VisitedSet.fingerprint(url), depth));
+        if (Files.exists(file)) {
+            long valid = replay(file, replay);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        return new CrawlJournal(file, flusher, interval);
+    }
+
+    private static long replay(Path file, Replay replay) throws IOException {
+        long size = Files.size(file);
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                byte[] data;
+                try {
+                    int length = in.readInt();
+                    long crc = in.readLong();
+                    if (length < 0 || length > size - valid - Integer.BYTES - Long.BYTES) {
+                        return valid;
+                    }
+                    data = new byte[length];
+                    in.readFully(data);
+                    CRC32 actual = new CRC32();
+                    actual.update(data);
+                    if (actual.getValue() != crc) {
+                        return valid;
+                    }
+                } catch (EOFException e) {
+                    return valid;
+                }
+                valid += Integer.BYTES + Long.BYTES + data.length;
+                DataInputStream records = new DataInputStream(new ByteArrayInputStream(data));
+                while (records.available() > 0) {
+                    byte type = records.readByte();
+                    String url = records.readUTF();
+                    switch (type) {
+                        case ENQUEUED:
+                            replay.depths.merge(url, records.readInt(), Math::min);
+                            break;
+                        case DOWNLOADED:
+                            replay.downloaded.add(url);
+                            break;
+                        case EXTRACTED:
+                            replay.extracted.add(url);
+                            break;
+                        case FAILED:
+                            replay.errors.put(url, new IOException(records.readUTF()));
+                            break;
+                        case PAGE:
+                            replay.depths.merge(url, records.readInt(), Math::min);
+                            byte flags = records.readByte();
+                            if ((flags & PAGE_DOWNLOADED) != 0) {
+                                replay.downloaded.add(url);
+                            }
+                            if ((flags & PAGE_EXTRACTED) != 0) {
+                                replay.extracted.add(url);
+                            }
+                            break;
+                        default:
+                            throw new IOException("Corrupted journal " + file);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Records that page is enqueued with given depth.
+     *
+     * @param url   url of the page
+     * @param depth depth of the page
+     */
+    synchronized void enqueued(String url, int depth) {
+        try {
+            batch.writeByte(ENQUEUED);
+            batch.writeUTF(url);
+            batch.writeInt(depth);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records that page is downloaded.
+     *
+     * @param url url of the page
+     */
+    synchronized void downloaded(String url) {
+        write(DOWNLOADED, url);
+    }
+
+    /**
+     * Records that links of page are enqueued.
+     *
+     * @param url url of the page
+     */
+    synchronized void extracted(String url) {
+        write(EXTRACTED, url);
+    }
+
+    /**
+     * Records that page can't be downloaded or extracted.
+     *
+     * @param url url of the page
+     * @param e   error
+     */
+    synchronized void failed(String url, IOException e) {
+        write(FAILED, url);
+        try {
+            batch.writeUTF(String.valueOf(e.getMessage()));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void write(byte type, String url) {
+        try {
+            batch.writeByte(type);
+            batch.writeUTF(url);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes current batch to disk and forces it, then compacts journal, if it has grown enough.
+     * Batch is taken under the lock of the file, so batches are written in order and no batch is taken
+     * after journal is closed.
+     *
+     * @throws IOException if batch can't be written
+     */
+    void flush() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            byte[] data;
+            synchronized (this) {
+                if (bytes.size() == 0) {
+                    return;
+                }
+                data = bytes.toByteArray();
+                bytes = new ByteArrayOutputStream(data.length);
+                batch = new DataOutputStream(bytes);
+            }
+            write(channel, data);
+            channel.force(false);
+            long size = channel.size();
+            if (size >= COMPACTION_THRESHOLD && size >= 2 * compacted) {
+                compact();
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + data.length);
+        buffer.putInt(data.length).putLong(crc.getValue()).put(data).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Replaces journal with snapshot of its state. Snapshot is written in batches of the usual format,
+     * so it is replayed as any journal and new batches are appended to it.
+     */
+    private void compact() throws IOException {
+        Replay state = new Replay();
+        replay(file, state);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+            DataOutputStream records = new DataOutputStream(snapshot);
+            for (Map.Entry<String, Integer> entry : state.depths.entrySet()) {
+                String url = entry.getKey();
+                records.writeByte(PAGE);
+                records.writeUTF(url);
+                records.writeInt(entry.getValue());
+                records.writeByte((state.downloaded.contains(url) ? PAGE_DOWNLOADED : 0)
+                        | (state.extracted.contains(url) ? PAGE_EXTRACTED : 0));
+                IOException e = state.errors.get(url);
+                if (e != null) {
+                    records.writeByte(FAILED);
+                    records.writeUTF(url);
+                    records.writeUTF(String.valueOf(e.getMessage()));
+                }
+                if (snapshot.size() >= SNAPSHOT_BATCH) {
+                    write(out, snapshot.toByteArray());
+                    snapshot.reset();
+                }
+            }
+            if (snapshot.size() > 0) {
+                write(out, snapshot.toByteArray());
+            }
+            out.force(false);
+        }
+        channel.close();
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        compacted = channel.size();
+    }
+
+    /**
+     * Stops background writes, writes the last batch and closes journal. Interrupt of the calling thread
+     * is postponed until the batch is written, as interrupt closes the channel.
+     *
+     * @throws IOException if batch can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        flushing.cancel(false);
+        boolean interrupted = Thread.interrupted();
+        try {
+            synchronized (lock) {
+                try {
+                    flush();
+                } finally {
+                    closed = true;
+                    channel.close();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Closes and deletes journal of finished crawl.
+     *
+     * @throws IOException if journal can't be deleted
+     */
+    void delete() throws IOException {
+        flushing.cancel(false);
+        synchronized (lock) {
+            closed = true;
+            channel.close();
+        }
+        Files.deleteIfExists(file);
+    }
+}
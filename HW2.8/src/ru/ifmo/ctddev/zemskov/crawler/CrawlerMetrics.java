@@ -0,0 +1,343 @@
+package ru.ifmo.ctddev.zemskov.crawler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live metrics of {@link WebCrawler}. Events are recorded to striped counters and lock-free
+ * histograms, so recording is cheap enough to be always on. Getters read current values,
+ * {@link #snapshot()} returns values, which don't change anymore.
+ * <p>
+ * Time, which links spend waiting for their hosts, is sum of differences between times of
+ * removal and addition to the frontier, so it is accumulated without per-link timestamps:
+ * every addition subtracts its time, every removal adds its time, and links, which still wait,
+ * are counted up to the current time.
+ * <p>
+ * Latencies of hosts are kept only for {@value #MAX_HOSTS} hosts with the most downloads, so metrics
+ * of crawl of many hosts stay small. Hosts are chosen by Space-Saving algorithm: download from
+ * untracked host replaces the tracked host with the fewest downloads, the new host inherits its
+ * number of downloads, but starts with empty histogram.
+ *
+ * @author Kirill Zemskov
+ */
+public class CrawlerMetrics implements CrawlerMetricsMXBean {
+    private static final int MAX_HOSTS = 64;
+
+    private final long start = System.nanoTime();
+    private final Frontier frontier;
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder links = new LongAdder();
+    private final LongAdder downloading = new LongAdder();
+    private final LongAdder extracting = new LongAdder();
+    private final LongAdder waiting = new LongAdder();
+    private final LongAdder waited = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final ConcurrentHashMap<String, HostLatency> hostLatency = new ConcurrentHashMap<>();
+
+    CrawlerMetrics(Frontier frontier) {
+        this.frontier = frontier;
+    }
+
+    /**
+     * Records start of download.
+     *
+     * @return start time to pass to {@link #downloaded(String, long, boolean)}
+     */
+    long downloading() {
+        downloading.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Records end of download.
+     *
+     * @param host    host of downloaded page
+     * @param started time, returned by {@link #downloading()}
+     * @param success whether page was downloaded
+     */
+    void downloaded(String host, long started, boolean success) {
+        long nanos = System.nanoTime() - started;
+        downloading.decrement();
+        if (success) {
+            pages.increment();
+        } else {
+            errors.increment();
+        }
+        latency.record(nanos);
+        HostLatency tracked = hostLatency.get(host);
+        if (tracked == null) {
+            tracked = track(host);
+        }
+        tracked.downloads.increment();
+        tracked.histogram.record(nanos);
+    }
+
+    private synchronized HostLatency track(String host) {
+        HostLatency tracked = hostLatency.get(host);
+        if (tracked != null) {
+            return tracked;
+        }
+        if (hostLatency.size() < MAX_HOSTS) {
+            tracked = new HostLatency(0);
+        } else {
+            String rarest = null;
+            long fewest = Long.MAX_VALUE;
+            for (Map.Entry<String, HostLatency> entry : hostLatency.entrySet()) {
+                long downloads = entry.getValue().downloads.sum();
+                if (downloads < fewest) {
+                    rarest = entry.getKey();
+                    fewest = downloads;
+                }
+            }
+            // histogram of evicted host isn't reused, threads, which got it before, may still record to it
+            hostLatency.remove(rarest);
+            tracked = new HostLatency(fewest);
+        }
+        hostLatency.put(host, tracked);
+        return tracked;
+    }
+
+    /**
+     * Records start of extraction.
+     */
+    void extracting() {
+        extracting.increment();
+    }
+
+    /**
+     * Records end of extraction.
+     *
+     * @param count   number of extracted links
+     * @param success whether links were extracted
+     */
+    void extracted(int count, boolean success) {
+        extracting.decrement();
+        if (success) {
+            links.add(count);
+        } else {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Records addition of link to the frontier.
+     */
+    void enqueued() {
+        waiting.increment();
+        waited.add(start - System.nanoTime());
+    }
+
+    /**
+     * Records removal of link from the frontier.
+     */
+    void dequeued() {
+        waiting.decrement();
+        waited.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Returns current values of metrics, which don't change anymore.
+     *
+     * @return snapshot of metrics
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    @Override
+    public long getPages() {
+        return pages.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getLinks() {
+        return links.sum();
+    }
+
+    @Override
+    public double getPagesPerSecond() {
+        return pages.sum() * 1e9 / Math.max(1, System.nanoTime() - start);
+    }
+
+    @Override
+    public long getDownloading() {
+        return downloading.sum();
+    }
+
+    @Override
+    public long getExtracting() {
+        return extracting.sum();
+    }
+
+    @Override
+    public long getFrontierInMemory() {
+        return frontier.inMemory();
+    }
+
+    @Override
+    public long getFrontierSpilled() {
+        return frontier.spilled();
+    }
+
+    @Override
+    public long getBlockedMillis() {
+        long now = System.nanoTime() - start;
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(0, waited.sum() + waiting.sum() * now));
+    }
+
+    @Override
+    public double getLatencyP50() {
+        return latency.percentile(50);
+    }
+
+    @Override
+    public double getLatencyP99() {
+        return latency.percentile(99);
+    }
+
+    @Override
+    public Map<String, Double> getHostLatencyP50() {
+        return hostPercentiles(50);
+    }
+
+    @Override
+    public Map<String, Double> getHostLatencyP99() {
+        return hostPercentiles(99);
+    }
+
+    private Map<String, Double> hostPercentiles(double percentile) {
+        Map<String, Double> result = new HashMap<>();
+        hostLatency.forEach((host, tracked) -> result.put(host, tracked.histogram.percentile(percentile)));
+        return result;
+    }
+
+    /**
+     * Latencies of tracked host and estimated number of its downloads.
+     */
+    private static class HostLatency {
+        private final LongAdder downloads = new LongAdder();
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private HostLatency(long downloads) {
+            this.downloads.add(downloads);
+        }
+    }
+
+    /**
+     * Values of metrics at some moment.
+     */
+    public static final class Snapshot implements CrawlerMetricsMXBean {
+        private final long pages;
+        private final long errors;
+        private final long links;
+        private final double pagesPerSecond;
+        private final long downloading;
+        private final long extracting;
+        private final long frontierInMemory;
+        private final long frontierSpilled;
+        private final long blockedMillis;
+        private final double latencyP50;
+        private final double latencyP99;
+        private final Map<String, Double> hostLatencyP50;
+        private final Map<String, Double> hostLatencyP99;
+
+        private Snapshot(CrawlerMetrics metrics) {
+            pages = metrics.getPages();
+            errors = metrics.getErrors();
+            links = metrics.getLinks();
+            pagesPerSecond = metrics.getPagesPerSecond();
+            downloading = metrics.getDownloading();
+            extracting = metrics.getExtracting();
+            frontierInMemory = metrics.getFrontierInMemory();
+            frontierSpilled = metrics.getFrontierSpilled();
+            blockedMillis = metrics.getBlockedMillis();
+            latencyP50 = metrics.getLatencyP50();
+            latencyP99 = metrics.getLatencyP99();
+            hostLatencyP50 = Collections.unmodifiableMap(metrics.getHostLatencyP50());
+            hostLatencyP99 = Collections.unmodifiableMap(metrics.getHostLatencyP99());
+        }
+
+        @Override
+        public long getPages() {
+            return pages;
+        }
+
+        @Override
+        public long getErrors() {
+            return errors;
+        }
+
+        @Override
+        public long getLinks() {
+            return links;
+        }
+
+        @Override
+        public double getPagesPerSecond() {
+            return pagesPerSecond;
+        }
+
+        @Override
+        public long getDownloading() {
+            return downloading;
+        }
+
+        @Override
+        public long getExtracting() {
+            return extracting;
+        }
+
+        @Override
+        public long getFrontierInMemory() {
+            return frontierInMemory;
+        }
+
+        @Override
+        public long getFrontierSpilled() {
+            return frontierSpilled;
+        }
+
+        @Override
+        public long getBlockedMillis() {
+            return blockedMillis;
+        }
+
+        @Override
+        public double getLatencyP50() {
+            return latencyP50;
+        }
+
+        @Override
+        public double getLatencyP99() {
+            return latencyP99;
+        }
+
+        @Override
+        public Map<String, Double> getHostLatencyP50() {
+            return hostLatencyP50;
+        }
+
+        @Override
+        public Map<String, Double> getHostLatencyP99() {
+            return hostLatencyP99;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("pages=%d (%.1f/s), errors=%d, links=%d, downloading=%d, extracting=%d, "
+                            + "frontier=%d+%d, blocked=%dms, latency p50=%.2fms p99=%.2fms",
+                    pages, pagesPerSecond, errors, links, downloading, extracting,
+                    frontierInMemory, frontierSpilled, blockedMillis, latencyP50, latencyP99);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ru.ifmo.ctddev.zemskov.crawler;
+
+import java.util.Map;
+
+/**
+ * Metrics of {@link WebCrawler}, which are exposed via JMX. All counters are accumulated
+ * since creation of crawler. Latencies are in milliseconds.
+ *
+ * @author Kirill Zemskov
+ */
+public interface CrawlerMetricsMXBean {
+    /**
+     * @return number of downloaded pages
+     */
+    long getPages();
+
+    /**
+     * @return number of pages, which weren't downloaded or extracted because of errors
+     */
+    long getErrors();
+
+    /**
+     * @return number of extracted links
+     */
+    long getLinks();
+
+    /**
+     * @return average number of downloaded pages per second
+     */
+    double getPagesPerSecond();
+
+    /**
+     * @return number of running downloads
+     */
+    long getDownloading();
+
+    /**
+     * @return number of running extractions
+     */
+    long getExtracting();
+
+    /**
+     * @return number of links, waiting in the frontier in memory
+     */
+    long getFrontierInMemory();
+
+    /**
+     * @return number of links, waiting in the frontier on disk
+     */
+    long getFrontierSpilled();
+
+    /**
+     * @return total time, which links spent waiting for permits of their hosts, in milliseconds
+     */
+    long getBlockedMillis();
+
+    /**
+     * @return median latency of downloads
+     */
+    double getLatencyP50();
+
+    /**
+     * @return 99th percentile of latency of downloads
+     */
+    double getLatencyP99();
+
+    /**
+     * @return median latency of downloads for hosts with the most downloads
+     */
+    Map<String, Double> getHostLatencyP50();
+
+    /**
+     * @return 99th percentile of latency of downloads for hosts with the most downloads
+     */
+    Map<String, Double> getHostLatencyP99();
+}
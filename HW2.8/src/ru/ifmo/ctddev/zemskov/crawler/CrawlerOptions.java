@@ -0,0 +1,252 @@
+package ru.ifmo.ctddev.zemskov.crawler;
+
+import java.nio.file.Path;
+
+/**
+ * Optional settings of {@link WebCrawler}. Every setter returns {@code this},
+ * so options can be chained: {@code new CrawlerOptions().visitedBloomFilter(1 << 24).offHeapVisited(true)}.
+ *
+ * @author Kirill Zemskov
+ */
+public class CrawlerOptions {
+    /**
+     * Ways to crawl.
+     */
+    public enum Mode {
+        /**
+         * Every download and extraction is a separate future, which is awaited by the calling thread
+         */
+        QUEUE,
+        /**
+         * Pages of the same depth are processed in parallel, the next depth starts
+         * after all pages of previous one are processed
+         */
+        LEVEL,
+        /**
+         * Every page goes through asynchronous pipeline of download, extract, filter and enqueue stages
+         * with bounded number of pages in flight
+         */
+        PIPELINE
+    }
+
+    private Mode mode = Mode.QUEUE;
+    private int pipelineInFlight = 0;
+    private boolean virtualThreads = false;
+    private int maxDownloads = 0;
+    private long frontierBudget = Long.MAX_VALUE;
+    private Path frontierSpill = null;
+    private Path journal = null;
+    private long journalInterval = 2000;
+    private double extractorCpuBudget = 0;
+    private boolean adaptivePerHost = false;
+    private int expectedUrls = 1 << 16;
+    private long visitedBloomBits = 0;
+    private boolean offHeapVisited = false;
+
+    /**
+     * Sets the way to crawl.
+     *
+     * @param mode crawl mode
+     * @return this options
+     */
+    public CrawlerOptions mode(Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * Sets whether every download runs on its own virtual thread. In that case number of downloaders
+     * is ignored and concurrency is limited only by {@code perHost} and {@link #maxDownloads(int)}.
+     * Virtual threads require Java 21 or later, on older versions {@link WebCrawler} can't be created
+     * with this option.
+     *
+     * @param virtualThreads {@code true} to download on virtual threads
+     * @return this options
+     */
+    public CrawlerOptions virtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Sets maximal number of simultaneous downloads from all hosts. Downloads over the limit
+     * wait in queue without occupying any thread. Non-positive value means no limit.
+     *
+     * @param downloads maximal number of simultaneous downloads
+     * @return this options
+     */
+    public CrawlerOptions maxDownloads(int downloads) {
+        this.maxDownloads = downloads;
+        return this;
+    }
+
+    /**
+     * Sets maximal number of pages, which are downloaded or wait for extraction at the same time,
+     * in {@link Mode#PIPELINE} mode. Non-positive value means twice the total number of threads.
+     *
+     * @param pages maximal number of pages in flight
+     * @return this options
+     */
+    public CrawlerOptions pipelineInFlight(int pages) {
+        this.pipelineInFlight = pages;
+        return this;
+    }
+
+    /**
+     * Sets maximal number of links, which wait for download in memory. Links over the budget
+     * are written to disk and read back, when their host is ready to download them.
+     *
+     * @param links maximal number of waiting links in memory
+     * @return this options
+     */
+    public CrawlerOptions frontierBudget(long links) {
+        this.frontierBudget = links;
+        return this;
+    }
+
+    /**
+     * Sets directory for links over the frontier budget. By default temporary directory is used.
+     *
+     * @param directory directory for spilled links
+     * @return this options
+     */
+    public CrawlerOptions frontierSpill(Path directory) {
+        this.frontierSpill = directory;
+        return this;
+    }
+
+    /**
+     * Sets directory for journals of crawls. Crawl, which didn't finish, is resumed from its journal
+     * by the next invocation with the same url and depth. Supported only in {@link Mode#PIPELINE} mode.
+     *
+     * @param directory directory for journals, {@code null} disables journal
+     * @return this options
+     */
+    public CrawlerOptions journal(Path directory) {
+        this.journal = directory;
+        return this;
+    }
+
+    /**
+     * Sets interval between writes of journal to disk.
+     *
+     * @param millis interval in milliseconds
+     * @return this options
+     */
+    public CrawlerOptions journalInterval(long millis) {
+        this.journalInterval = millis;
+        return this;
+    }
+
+    /**
+     * Sets expected number of visited URLs, used as initial capacity of visited set.
+     *
+     * @param expectedUrls expected number of URLs
+     * @return this options
+     */
+    public CrawlerOptions expectedUrls(int expectedUrls) {
+        this.expectedUrls = expectedUrls;
+        return this;
+    }
+
+    /**
+     * Puts Bloom filter of given size in front of visited set. Filter lets crawler
+     * skip already visited links without locking, {@code 0} disables it.
+     *
+     * @param bits number of bits in the filter
+     * @return this options
+     */
+    public CrawlerOptions visitedBloomFilter(long bits) {
+        this.visitedBloomBits = bits;
+        return this;
+    }
+
+    /**
+     * Sets whether fingerprints of visited URLs are stored off-heap.
+     *
+     * @param offHeap {@code true} to store visited set in direct buffers
+     * @return this options
+     */
+    public CrawlerOptions offHeapVisited(boolean offHeap) {
+        this.offHeapVisited = offHeap;
+        return this;
+    }
+
+    /**
+     * Sets CPU budget of link extraction: extractors wait, while CPU time, spent on extraction,
+     * exceeds {@code cores} processors in average, so parsing of heavy pages can't take processors
+     * from downloaders. Zero, which is default, means no budget.
+     *
+     * @param cores average number of processors for extraction
+     * @return these options
+     */
+    public CrawlerOptions extractorCpuBudget(double cores) {
+        this.extractorCpuBudget = cores;
+        return this;
+    }
+
+    /**
+     * Sets whether number of simultaneous downloads from every host adapts to latency and errors of host.
+     * Adaptive limit starts from one, grows additively while host answers fast and shrinks multiplicatively,
+     * when host slows down or fails. Limit, passed to constructor of {@link WebCrawler}, is its ceiling.
+     *
+     * @param adaptive whether limits of hosts are adaptive
+     * @return these options
+     */
+    public CrawlerOptions adaptivePerHost(boolean adaptive) {
+        this.adaptivePerHost = adaptive;
+        return this;
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    int getMaxDownloads() {
+        return maxDownloads;
+    }
+
+    int getPipelineInFlight() {
+        return pipelineInFlight;
+    }
+
+    long getFrontierBudget() {
+        return frontierBudget;
+    }
+
+    Path getFrontierSpill() {
+        return frontierSpill;
+    }
+
+    Path getJournal() {
+        return journal;
+    }
+
+    long getJournalInterval() {
+        return journalInterval;
+    }
+
+    int getExpectedUrls() {
+        return expectedUrls;
+    }
+
+    long getVisitedBloomBits() {
+        return visitedBloomBits;
+    }
+
+    boolean isOffHeapVisited() {
+        return offHeapVisited;
+    }
+
+    double getExtractorCpuBudget() {
+        return extractorCpuBudget;
+    }
+
+    boolean isAdaptivePerHost() {
+        return adaptivePerHost;
+    }
+}
@@ -0,0 +1,433 @@
+package ru.ifmo.ctddev.zemskov.crawler;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-host queues of links, which wait for download. Links are stored as compact records
+ * ({@link Link}) and at most {@code budget} of them are kept in memory. When budget is exceeded,
+ * new links of host are grouped into blocks and appended to on-disk segment log, blocks are
+ * read back when host's in-memory queue becomes empty. Order of links of every host is preserved,
+ * block, which can't be written, stays in memory at its place in the queue.
+ * <p>
+ * Every host has its own lock, log is locked only during append of block. Blocks are written and read back
+ * outside of host's lock: full block is put to the queue in memory and written by the thread, which filled it,
+ * so links are added to and polled from host while its block is written or read.
+ * Besides the budget, every host keeps in memory at most two blocks of {@value #BLOCK} links:
+ * one, which is read back, and one, which waits to be written.
+ * <p>
+ * If block can't be read back, its links are lost. Instead of them, one {@link Link#error failed} link
+ * is polled for every session, which had links in the block.
+ *
+ * @author Kirill Zemskov
+ */
+class Frontier implements Closeable {
+    private static final int BLOCK = 64;
+    private static final long SEGMENT_SIZE = 64 << 20;
+
+    private final ConcurrentHashMap<String, HostQueue> hosts = new ConcurrentHashMap<>();
+    private final AtomicLong inMemory = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final long budget;
+    private final Path directory;
+    private SpillLog log;
+
+    /**
+     * Record of link, which waits for download.
+     */
+    static final class Link {
+        final String url;
+        final int depth;
+        final int session;
+        /**
+         * If it isn't {@code null}, link stands for {@link #lost} links of session, which couldn't be
+         * read back from disk, and {@link #url} is the first of them.
+         */
+        final IOException error;
+        final int lost;
+
+        Link(String url, int depth, int session) {
+            this(url, depth, session, null, 0);
+        }
+
+        private Link(String url, int depth, int session, IOException error, int lost) {
+            this.url = url;
+            this.depth = depth;
+            this.session = session;
+            this.error = error;
+            this.lost = lost;
+        }
+    }
+
+    /**
+     * Creates frontier.
+     *
+     * @param budget    maximal number of links in memory
+     * @param directory directory for spilled links, if {@code null}, temporary directory is created on first spill
+     */
+    Frontier(long budget, Path directory) {
+        this.budget = budget;
+        this.directory = directory;
+    }
+
+    /**
+     * Adds link to the end of host's queue.
+     *
+     * @param host host of the link
+     * @param link link to add
+     */
+    void add(String host, Link link) {
+        hosts.computeIfAbsent(host, s -> new HostQueue()).add(link);
+    }
+
+    /**
+     * Removes link from the head of host's queue.
+     *
+     * @param host host to poll link of
+     * @return first link of the host, or {@code null} if there is no links of the host
+     */
+    Link poll(String host) {
+        HostQueue queue = hosts.get(host);
+        return queue == null ? null : queue.poll();
+    }
+
+    /**
+     * Checks if host has links in queue.
+     *
+     * @param host host to check
+     * @return {@code true} if there is at least one link of the host
+     */
+    boolean isEmpty(String host) {
+        HostQueue queue = hosts.get(host);
+        return queue == null || queue.isEmpty();
+    }
+
+    /**
+     * Returns number of links in memory.
+     *
+     * @return number of links in memory
+     */
+    long inMemory() {
+        return inMemory.get();
+    }
+
+    /**
+     * Returns number of links on disk.
+     *
+     * @return number of spilled links
+     */
+    long spilled() {
+        return spilled.get();
+    }
+
+    /**
+     * Deletes all segments of the log.
+     *
+     * @throws IOException if segments can't be deleted
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    private synchronized SpillLog log() throws IOException {
+        if (log == null) {
+            log = directory == null
+                    ? new SpillLog(Files.createTempDirectory("frontier"), true)
+                    : new SpillLog(Files.createDirectories(directory), false);
+        }
+        return log;
+    }
+
+    private class HostQueue {
+        private final Queue<Link> memory = new ArrayDeque<>();
+        private final Queue<Block> blocks = new ArrayDeque<>();
+        private final List<Link> buffer = new ArrayList<>();
+        private final Object reader = new Object();
+        private Block reading;
+
+        private void add(Link link) {
+            Block block;
+            synchronized (this) {
+                inMemory.incrementAndGet();
+                if (blocks.isEmpty() && reading == null && buffer.isEmpty() && inMemory.get() <= budget) {
+                    memory.add(link);
+                    return;
+                }
+                buffer.add(link);
+                if (buffer.size() < BLOCK) {
+                    return;
+                }
+                block = new Block(new ArrayList<>(buffer));
+                buffer.clear();
+                blocks.add(block);
+            }
+            spill(block);
+        }
+
+        /**
+         * Writes block, which is already in the queue, to the log. If block was polled while it was written,
+         * written copy is discarded, if it can't be written, block stays in memory.
+         */
+        private void spill(Block block) {
+            Block written;
+            try {
+                written = log().write(block.links);
+            } catch (IOException e) {
+                System.err.println("Couldn't spill links to disk, keeping them in memory: " + e.getMessage());
+                return;
+            }
+            synchronized (this) {
+                if (!block.taken) {
+                    block.spilled(written);
+                    inMemory.addAndGet(-block.count);
+                    spilled.addAndGet(block.count);
+                    return;
+                }
+            }
+            try {
+                log().discard(written);
+            } catch (IOException e) {
+                System.err.println("Couldn't delete spilled segment: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Polls link from memory, if there is no one, reads the next block outside of host's lock.
+         * Only one thread reads block of host at a time, other pollers wait for it.
+         */
+        private Link poll() {
+            synchronized (reader) {
+                Block block;
+                synchronized (this) {
+                    Link link = take();
+                    if (link != null || blocks.isEmpty()) {
+                        return link;
+                    }
+                    block = blocks.poll();
+                    if (block.links != null) {
+                        block.taken = true;
+                        memory.addAll(block.links);
+                        return take();
+                    }
+                    reading = block;
+                }
+                List<Link> links;
+                try {
+                    links = log().read(block);
+                } catch (IOException e) {
+                    links = block.lost(e);
+                }
+                synchronized (this) {
+                    reading = null;
+                    spilled.addAndGet(-block.count);
+                    inMemory.addAndGet(links.size());
+                    memory.addAll(links);
+                    return take();
+                }
+            }
+        }
+
+        private Link take() {
+            if (memory.isEmpty() && blocks.isEmpty() && reading == null) {
+                memory.addAll(buffer);
+                buffer.clear();
+            }
+            Link link = memory.poll();
+            if (link != null) {
+                inMemory.decrementAndGet();
+            }
+            return link;
+        }
+
+        private synchronized boolean isEmpty() {
+            return memory.isEmpty() && blocks.isEmpty() && buffer.isEmpty() && reading == null;
+        }
+    }
+
+    /**
+     * Block of links, which is either spilled to segment, or kept in memory, while it is written or if it
+     * couldn't be written. Spilled block remembers the first link and number of links of every session,
+     * so sessions learn about their links, if block can't be read back.
+     */
+    private static class Block {
+        private Segment segment;
+        private long offset;
+        private int length;
+        private final int count;
+        private List<Link> links;
+        private List<Link> sessions = new ArrayList<>();
+        /**
+         * Whether links of block in memory were polled, guarded by lock of the host
+         */
+        private boolean taken;
+
+        private Block(Segment segment, long offset, int length, List<Link> links) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.count = links.size();
+            this.links = null;
+            Map<Integer, Integer> counts = new LinkedHashMap<>();
+            for (Link link : links) {
+                if (counts.merge(link.session, 1, Integer::sum) == 1) {
+                    sessions.add(link);
+                }
+            }
+            sessions.replaceAll(link -> new Link(link.url, link.depth, link.session, null, counts.get(link.session)));
+        }
+
+        private Block(List<Link> links) {
+            this.segment = null;
+            this.offset = 0;
+            this.length = 0;
+            this.count = links.size();
+            this.links = links;
+        }
+
+        /**
+         * Takes place of written copy of this block.
+         */
+        private void spilled(Block written) {
+            segment = written.segment;
+            offset = written.offset;
+            length = written.length;
+            sessions = written.sessions;
+            links = null;
+        }
+
+        private List<Link> lost(IOException e) {
+            List<Link> lost = new ArrayList<>();
+            for (Link link : sessions) {
+                IOException error = new IOException("Couldn't read " + link.lost + " spilled links: " + e.getMessage(), e);
+                lost.add(new Link(link.url, link.depth, link.session, error, link.lost));
+            }
+            return lost;
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private int live = 0;
+
+        private Segment(Path path) throws IOException {
+            this.path = path;
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        private void delete() throws IOException {
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Append-only log, split into segments. Segment is deleted, when all its blocks are read
+     * and it isn't the one being written.
+     */
+    private static class SpillLog implements Closeable {
+        private final Path directory;
+        private final boolean temporary;
+        private final List<Segment> segments = new ArrayList<>();
+        private Segment current;
+        private int next = 0;
+
+        private SpillLog(Path directory, boolean temporary) throws IOException {
+            this.directory = directory;
+            this.temporary = temporary;
+            roll();
+        }
+
+        private void roll() throws IOException {
+            current = new Segment(Files.createTempFile(directory, "segment-" + next++ + "-", ".log"));
+            segments.add(current);
+        }
+
+        private synchronized Block write(List<Link> links) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                for (Link link : links) {
+                    out.writeInt(link.session);
+                    out.writeInt(link.depth);
+                    out.writeUTF(link.url);
+                }
+            }
+            if (current.channel.size() + bytes.size() > SEGMENT_SIZE) {
+                Segment old = current;
+                roll();
+                if (old.live == 0) {
+                    release(old);
+                }
+            }
+            long offset = current.channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                current.channel.write(buffer, offset + buffer.position());
+            }
+            current.live++;
+            return new Block(current, offset, bytes.size(), links);
+        }
+
+        private List<Link> read(Block block) throws IOException {
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(block.length);
+                while (buffer.hasRemaining()) {
+                    if (block.segment.channel.read(buffer, block.offset + buffer.position()) < 0) {
+                        throw new EOFException("Truncated segment " + block.segment.path);
+                    }
+                }
+                List<Link> links = new ArrayList<>(block.count);
+                try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()))) {
+                    for (int i = 0; i < block.count; i++) {
+                        int session = in.readInt();
+                        int depth = in.readInt();
+                        links.add(new Link(in.readUTF(), depth, session));
+                    }
+                }
+                return links;
+            } finally {
+                discard(block);
+            }
+        }
+
+        /**
+         * Marks block as not needed anymore, segment is deleted, when all its blocks aren't needed.
+         */
+        private synchronized void discard(Block block) throws IOException {
+            if (--block.segment.live == 0 && block.segment != current) {
+                release(block.segment);
+            }
+        }
+
+        private void release(Segment segment) throws IOException {
+            segments.remove(segment);
+            segment.delete();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            for (Segment segment : segments) {
+                segment.delete();
+            }
+            segments.clear();
+            if (temporary) {
+                Files.deleteIfExists(directory);
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package ru.ifmo.ctddev.zemskov.crawler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+
+/**
+ * Limits number of links, which are simultaneously downloaded from the same host.
+ * Links, waiting for their host, are kept in {@link Frontier}, every host has atomic counter
+ * of running downloads, so permits are acquired and released without any global lock.
+ * Optionally total number of running downloads for all hosts is also limited.
+ * <p>
+ * If limits are adaptive, every host starts with one permit, and its limit is changed by
+ * additive increase and multiplicative decrease: every successful download adds {@code 1 / limit},
+ * so limit grows by one per round of downloads, failed download halves the limit, and download,
+ * which is much slower than the fastest recent download from the same host, decreases it by quarter.
+ * Limit is decreased at most once per average latency of host and never exceeds {@code perHost}.
+ * <p>
+ * When permit is acquired, link is passed to dispatcher, including {@link Frontier.Link#error failed} links,
+ * which stand for links lost by the frontier. If dispatcher accepts link,
+ * it must be followed by exactly one {@link #release(String)} for the same host.
+ * Links, which waited for permit, are dispatched in the executor, not in the thread, which released
+ * permit, so downloads, which complete synchronously, don't dispatch each other recursively.
+ *
+ * @author Kirill Zemskov
+ */
+class HostScheduler implements Closeable {
+    private static final double SLOWDOWN = 2;
+    private static final long NOISE = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ConcurrentHashMap<String, Host> hosts = new ConcurrentHashMap<>();
+    private final Frontier frontier;
+    private final CrawlerMetrics metrics;
+    private final BiPredicate<String, Frontier.Link> dispatcher;
+    private final int perHost;
+    private final boolean adaptive;
+    private final TaskLimiter global;
+    private final Executor executor;
+
+    /**
+     * Creates scheduler, which runs at most {@code perHost} downloads for every host
+     * and at most {@code total} downloads for all hosts together.
+     *
+     * @param perHost    maximal number of running downloads for the same host
+     * @param adaptive   whether limits of hosts adapt to their latency and errors
+     * @param total      maximal number of running downloads, non-positive value means no limit
+     * @param frontier   frontier for waiting links
+     * @param metrics    metrics to record waiting of links to
+     * @param dispatcher starts download of link from host, returns {@code false} if link is dropped
+     * @param executor   executor, which dispatches waiting links after release of permits
+     */
+    HostScheduler(int perHost, boolean adaptive, int total, Frontier frontier, CrawlerMetrics metrics,
+                  BiPredicate<String, Frontier.Link> dispatcher, Executor executor) {
+        this.perHost = perHost;
+        this.adaptive = adaptive;
+        this.dispatcher = dispatcher;
+        this.frontier = frontier;
+        this.metrics = metrics;
+        this.executor = executor;
+        global = total > 0 ? new TaskLimiter(total, executor) : null;
+    }
+
+    /**
+     * Dispatches {@code link} in the calling thread, if there is free permit for {@code host},
+     * otherwise puts it to the frontier, it will be dispatched by {@link #release(String)}.
+     *
+     * @param host host of the link
+     * @param link link to download
+     */
+    void submit(String host, Frontier.Link link) {
+        Host state = hosts.computeIfAbsent(host, s -> new Host(adaptive ? 1 : perHost));
+        metrics.enqueued();
+        frontier.add(host, link);
+        drain(host, state);
+    }
+
+    /**
+     * Adapts limit of {@code host} to result of download, if limits are adaptive.
+     * Must be called before {@link #release(String)} of the download.
+     *
+     * @param host    host of finished download
+     * @param nanos   latency of download in nanoseconds
+     * @param success whether page was downloaded
+     */
+    void completed(String host, long nanos, boolean success) {
+        if (adaptive) {
+            hosts.get(host).completed(nanos, success, perHost);
+        }
+    }
+
+    /**
+     * Returns permit of finished download and dispatches next link of {@code host} in the executor, if any.
+     * If executor is shut down, link is dispatched in the calling thread.
+     *
+     * @param host host of finished download
+     */
+    void release(String host) {
+        if (global != null) {
+            global.release();
+        }
+        Host state = hosts.get(host);
+        state.running.decrementAndGet();
+        if (!frontier.isEmpty(host)) {
+            try {
+                executor.execute(() -> drain(host, state));
+            } catch (RejectedExecutionException e) {
+                drain(host, state);
+            }
+        }
+    }
+
+    /**
+     * Returns frontier of waiting links.
+     *
+     * @return frontier
+     */
+    Frontier frontier() {
+        return frontier;
+    }
+
+    /**
+     * Deletes links, spilled to disk.
+     *
+     * @throws IOException if spilled links can't be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        frontier.close();
+    }
+
+    private void drain(String host, Host state) {
+        AtomicInteger counter = state.running;
+        while (!frontier.isEmpty(host)) {
+            int current = counter.get();
+            if (current >= state.limit) {
+                return;
+            }
+            if (!counter.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Frontier.Link link = frontier.poll(host);
+            if (link == null) {
+                counter.decrementAndGet();
+                continue;
+            }
+            for (int i = link.error == null ? 1 : link.lost; i > 0; i--) {
+                metrics.dequeued();
+            }
+            if (global == null) {
+                if (!dispatcher.test(host, link)) {
+                    counter.decrementAndGet();
+                }
+            } else {
+                global.submit(() -> {
+                    if (!dispatcher.test(host, link)) {
+                        release(host);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Running downloads and limit of one host.
+     */
+    private static class Host {
+        private final AtomicInteger running = new AtomicInteger();
+        private volatile int limit;
+        private double window;
+        private long fastest = Long.MAX_VALUE;
+        private double average;
+        private long decreased = System.nanoTime();
+
+        private Host(int limit) {
+            this.limit = limit;
+            window = limit;
+        }
+
+        private synchronized void completed(long nanos, boolean success, int ceiling) {
+            fastest = nanos < fastest ? nanos : fastest + (nanos - fastest) / 256;
+            average = average == 0 ? nanos : average + (nanos - average) / 8;
+            if (!success) {
+                decrease(0.5);
+            } else if (nanos > SLOWDOWN * fastest && nanos - fastest > NOISE) {
+                decrease(0.75);
+            } else {
+                window = Math.min(ceiling, window + 1 / window);
+            }
+            limit = (int) window;
+        }
+
+        private void decrease(double factor) {
+            long now = System.nanoTime();
+            if (now - decreased > average) {
+                window = Math.max(1, window * factor);
+                decreased = now;
+            }
+        }
+    }
+}
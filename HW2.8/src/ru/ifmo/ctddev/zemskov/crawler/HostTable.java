@@ -0,0 +1,92 @@
+package ru.ifmo.ctddev.zemskov.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.URLUtils;
+
+import java.net.MalformedURLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of hosts of URLs. Host depends only on scheme and authority of URL, so it is parsed
+ * by {@link URLUtils#getHost(String)} once for every distinct {@code scheme://authority} prefix,
+ * and all links with the same prefix share the same host string.
+ * <p>
+ * Cache keeps at most {@value #MAX_SIZE} prefixes, least recently used ones are evicted.
+ * Cache is split into {@value #SHARDS} shards with their own locks, so threads looking up
+ * different hosts rarely contend.
+ *
+ * @author Kirill Zemskov
+ */
+class HostTable {
+    private static final int SHARDS = 64;
+    private static final int MAX_SIZE = 1 << 16;
+
+    private final Shard[] shards = new Shard[SHARDS];
+
+    HostTable() {
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(MAX_SIZE / SHARDS);
+        }
+    }
+
+    /**
+     * Returns host of URL.
+     *
+     * @param url URL to get host of
+     * @return host
+     * @throws MalformedURLException if URL is malformed
+     */
+    String getHost(String url) throws MalformedURLException {
+        int scheme = url.indexOf("://");
+        if (scheme < 0) {
+            return URLUtils.getHost(url);
+        }
+        int end = scheme + 3;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        String prefix = url.substring(0, end);
+        int hash = prefix.hashCode();
+        Shard shard = shards[(hash ^ hash >>> 16) & (SHARDS - 1)];
+        Object host;
+        synchronized (shard) {
+            host = shard.get(prefix);
+        }
+        if (host == null) {
+            try {
+                host = URLUtils.getHost(prefix);
+            } catch (MalformedURLException e) {
+                host = e;
+            }
+            synchronized (shard) {
+                Object old = shard.putIfAbsent(prefix, host);
+                if (old != null) {
+                    host = old;
+                }
+            }
+        }
+        if (host instanceof MalformedURLException) {
+            throw new MalformedURLException(((MalformedURLException) host).getMessage());
+        }
+        return (String) host;
+    }
+
+    /**
+     * Part of cache in access order, which evicts the eldest prefix, when it is full.
+     */
+    private static class Shard extends LinkedHashMap<String, Object> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private Shard(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+            return size() > capacity;
+        }
+    }
+}
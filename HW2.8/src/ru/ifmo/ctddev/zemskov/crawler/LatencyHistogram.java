@@ -0,0 +1,80 @@
+package ru.ifmo.ctddev.zemskov.crawler;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies. Latencies are counted in microseconds in log-linear buckets:
+ * every power of two is split into {@value #SUB_BUCKETS} buckets, so relative error of
+ * percentile is at most 12.5%, recording is one atomic increment.
+ *
+ * @author Kirill Zemskov
+ */
+class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS);
+
+    /**
+     * Records latency.
+     *
+     * @param nanos latency in nanoseconds
+     */
+    void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(0, nanos / 1000)));
+    }
+
+    /**
+     * Returns number of recorded latencies.
+     *
+     * @return number of latencies
+     */
+    long count() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns approximate percentile of recorded latencies.
+     *
+     * @param percentile percentile from 0 to 100
+     * @return latency in milliseconds, or zero if nothing was recorded
+     */
+    double percentile(double percentile) {
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        for (int i = 0; i < snapshot.length; i++) {
+            rank -= snapshot[i];
+            if (rank <= 0 && snapshot[i] > 0) {
+                return value(i) / 1000.0;
+            }
+        }
+        return 0;
+    }
+
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(micros));
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long value(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+}
@@ -0,0 +1,79 @@
+package ru.ifmo.ctddev.zemskov.crawler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free limiter of number of simultaneously running tasks. Tasks over the limit wait
+ * in the queue and are started in the executor after {@link #release()} of finished ones,
+ * so thread, which releases permit, never runs waiting task itself and chains of releases
+ * don't grow its stack.
+ * <p>
+ * Every task, started by {@link #submit(Runnable)}, must be followed by exactly one {@link #release()}.
+ *
+ * @author Kirill Zemskov
+ */
+class TaskLimiter {
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final int limit;
+    private final Executor executor;
+
+    /**
+     * Creates limiter, which runs at most {@code limit} tasks simultaneously.
+     *
+     * @param limit    maximal number of running tasks
+     * @param executor executor, which starts waiting tasks after release
+     */
+    TaskLimiter(int limit, Executor executor) {
+        this.limit = limit;
+        this.executor = executor;
+    }
+
+    /**
+     * Runs {@code task} in the calling thread, if there is free permit,
+     * otherwise puts it to the queue, it will be run by {@link #release()}.
+     *
+     * @param task task to run
+     */
+    void submit(Runnable task) {
+        pending.add(task);
+        drain();
+    }
+
+    /**
+     * Returns permit of finished task and starts next pending task in the executor, if any.
+     * If executor is shut down, task is run in the calling thread.
+     */
+    void release() {
+        running.decrementAndGet();
+        if (!pending.isEmpty()) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                drain();
+            }
+        }
+    }
+
+    private void drain() {
+        while (!pending.isEmpty()) {
+            int current = running.get();
+            if (current >= limit) {
+                return;
+            }
+            if (!running.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Runnable task = pending.poll();
+            if (task == null) {
+                running.decrementAndGet();
+            } else {
+                task.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package ru.ifmo.ctddev.zemskov.crawler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Compact set of visited URLs. URLs are normalized, unless set is {@link #exact(int) exact}, and only
+ * their 64-bit fingerprints are stored in open-addressing tables of primitive {@code long}s, which takes
+ * 8-16 bytes per URL instead of full strings. Tables are sharded by fingerprint, so threads adding different URLs rarely contend.
+ * <p>
+ * Optionally tables are stored off-heap and a Bloom filter is put in front of them,
+ * so {@link #contains(String)} answers for new URLs without taking any lock.
+ * <p>
+ * Different URLs with the same fingerprint are considered equal, probability of that
+ * is negligible for crawls of size much less than 2<sup>32</sup> URLs.
+ *
+ * @author Kirill Zemskov
+ */
+class VisitedSet {
+    private static final int SHARDS = 64;
+    private static final int BLOOM_HASHES = 4;
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final AtomicLongArray bloom;
+    private final long bloomBits;
+    private final boolean normalizing;
+
+    /**
+     * Creates set of normalized URLs.
+     *
+     * @param expected  expected number of URLs, used as initial capacity
+     * @param bloomBits number of bits in the Bloom filter, {@code 0} disables it
+     * @param offHeap   whether to store tables in direct buffers
+     */
+    VisitedSet(int expected, long bloomBits, boolean offHeap) {
+        this(expected, bloomBits, offHeap, true);
+    }
+
+    /**
+     * Creates set, which compares URLs as strings, without normalization.
+     *
+     * @param expected expected number of URLs, used as initial capacity
+     * @return empty set
+     */
+    static VisitedSet exact(int expected) {
+        return exact(expected, false);
+    }
+
+    /**
+     * Creates set, which compares URLs as strings, without normalization.
+     *
+     * @param expected expected number of URLs, used as initial capacity
+     * @param offHeap  whether to store tables in direct buffers
+     * @return empty set
+     */
+    static VisitedSet exact(int expected, boolean offHeap) {
+        return new VisitedSet(expected, 0, offHeap, false);
+    }
+
+    private VisitedSet(int expected, long bloomBits, boolean offHeap, boolean normalizing) {
+        this.normalizing = normalizing;
+        int capacity = Integer.highestOneBit(Math.max(expected / SHARDS, 8)) * 2;
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(offHeap ? new DirectTable(capacity) : new HeapTable(capacity));
+        }
+        this.bloomBits = bloomBits;
+        bloom = bloomBits > 0 ? new AtomicLongArray((int) ((bloomBits + 63) >>> 6)) : null;
+    }
+
+    /**
+     * Adds URL to the set.
+     *
+     * @param url URL to add
+     * @return {@code true} if URL wasn't visited before
+     */
+    boolean add(String url) {
+        long fingerprint = fingerprint(normalizing ? normalize(url) : url);
+        if (!shard(fingerprint).add(fingerprint)) {
+            return false;
+        }
+        if (bloom != null) {
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = bloomBit(fingerprint, i);
+                long mask = 1L << bit;
+                int word = (int) (bit >>> 6);
+                long value;
+                do {
+                    value = bloom.get(word);
+                } while ((value & mask) == 0 && !bloom.compareAndSet(word, value, value | mask));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if URL was visited.
+     *
+     * @param url URL to check
+     * @return {@code true} if URL was added to the set
+     */
+    boolean contains(String url) {
+        long fingerprint = fingerprint(normalizing ? normalize(url) : url);
+        if (bloom != null) {
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = bloomBit(fingerprint, i);
+                if ((bloom.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+        }
+        return shard(fingerprint).contains(fingerprint);
+    }
+
+    /**
+     * Returns number of visited URLs.
+     *
+     * @return size of the set
+     */
+    long size() {
+        long size = 0;
+        for (Shard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    private Shard shard(long fingerprint) {
+        return shards[(int) (fingerprint >>> 58)];
+    }
+
+    private long bloomBit(long fingerprint, int i) {
+        long h = (fingerprint >>> 32) + i * (fingerprint & 0xFFFFFFFFL);
+        return Math.floorMod(h, bloomBits);
+    }
+
+    /**
+     * Normalizes URL: drops fragment and default port, converts scheme and host to lower case
+     * and replaces empty path with {@code "/"}.
+     *
+     * @param url URL to normalize
+     * @return normalized URL
+     */
+    static String normalize(String url) {
+        int fragment = url.indexOf('#');
+        if (fragment >= 0) {
+            url = url.substring(0, fragment);
+        }
+        int scheme = url.indexOf("://");
+        if (scheme < 0) {
+            return url;
+        }
+        int hostEnd = scheme + 3;
+        while (hostEnd < url.length() && url.charAt(hostEnd) != '/' && url.charAt(hostEnd) != '?') {
+            hostEnd++;
+        }
+        String prefix = url.substring(0, scheme).toLowerCase();
+        String host = url.substring(scheme + 3, hostEnd).toLowerCase();
+        if (prefix.equals("http") && host.endsWith(":80")) {
+            host = host.substring(0, host.length() - 3);
+        } else if (prefix.equals("https") && host.endsWith(":443")) {
+            host = host.substring(0, host.length() - 4);
+        }
+        String rest = url.substring(hostEnd);
+        return prefix + "://" + host + (rest.isEmpty() || rest.charAt(0) == '?' ? "/" : "") + rest;
+    }
+
+    /**
+     * Computes 64-bit FNV-1a hash of string, finalized with MurmurHash3 mixer. Never returns {@code 0}.
+     *
+     * @param s string to hash
+     * @return fingerprint of the string
+     */
+    static long fingerprint(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    private static class Shard {
+        private Table table;
+        private int size;
+
+        private Shard(Table table) {
+            this.table = table;
+        }
+
+        private synchronized boolean add(long fingerprint) {
+            if (!insert(table, fingerprint)) {
+                return false;
+            }
+            if (++size * 4 > table.capacity() * 3) {
+                Table resized = table.create(table.capacity() * 2);
+                for (int i = 0; i < table.capacity(); i++) {
+                    if (table.get(i) != 0) {
+                        insert(resized, table.get(i));
+                    }
+                }
+                table = resized;
+            }
+            return true;
+        }
+
+        private synchronized boolean contains(long fingerprint) {
+            int mask = table.capacity() - 1;
+            for (int i = (int) fingerprint & mask; table.get(i) != 0; i = (i + 1) & mask) {
+                if (table.get(i) == fingerprint) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private static boolean insert(Table table, long fingerprint) {
+            int mask = table.capacity() - 1;
+            int i = (int) fingerprint & mask;
+            for (; table.get(i) != 0; i = (i + 1) & mask) {
+                if (table.get(i) == fingerprint) {
+                    return false;
+                }
+            }
+            table.set(i, fingerprint);
+            return true;
+        }
+    }
+
+    private interface Table {
+        int capacity();
+
+        long get(int i);
+
+        void set(int i, long value);
+
+        Table create(int capacity);
+    }
+
+    private static class HeapTable implements Table {
+        private final long[] data;
+
+        private HeapTable(int capacity) {
+            data = new long[capacity];
+        }
+
+        @Override
+        public int capacity() {
+            return data.length;
+        }
+
+        @Override
+        public long get(int i) {
+            return data[i];
+        }
+
+        @Override
+        public void set(int i, long value) {
+            data[i] = value;
+        }
+
+        @Override
+        public Table create(int capacity) {
+            return new HeapTable(capacity);
+        }
+    }
+
+    private static class DirectTable implements Table {
+        private final LongBuffer data;
+
+        private DirectTable(int capacity) {
+            data = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+
+        @Override
+        public int capacity() {
+            return data.capacity();
+        }
+
+        @Override
+        public long get(int i) {
+            return data.get(i);
+        }
+
+        @Override
+        public void set(int i, long value) {
+            data.put(i, value);
+        }
+
+        @Override
+        public Table create(int capacity) {
+            return new DirectTable(capacity);
+        }
+    }
+}
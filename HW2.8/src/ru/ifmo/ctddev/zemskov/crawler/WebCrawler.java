@@ -4,9 +4,17 @@ import info.kgeorgiy.java.advanced.crawler.*;
 import net.java.quickcheck.collection.Pair;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.function.Supplier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * Basic implementation of {@link info.kgeorgiy.java.advanced.crawler.Crawler}.
@@ -14,13 +22,27 @@ import java.util.function.Supplier;
  * @author Kirill Zemskov 
  */
 public class WebCrawler implements Crawler {
+    private static final AtomicInteger CRAWLER_IDS = new AtomicInteger();
+
     private final ExecutorService downloadThreadPool;
     private final ExecutorService extractThreadPool;
     private final Downloader downloader;
-    private final ConcurrentHashMap<String, Integer> hostCount = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, BlockingQueue<Supplier<String>>> left = new ConcurrentHashMap<>();
-    private final Set<String> downloaded = ConcurrentHashMap.newKeySet();
-    private final int perHost;
+    private final HostScheduler scheduler;
+    private final int expectedUrls;
+    private final long visitedBloomBits;
+    private final boolean offHeapVisited;
+    private final HostTable hosts = new HostTable();
+    private final CpuBudget extractBudget;
+    private final CrawlerMetrics metrics;
+    private final ObjectName metricsName;
+    private final CrawlerOptions.Mode mode;
+    private final int pipelineInFlight;
+    private final Path journalDirectory;
+    private final long journalInterval;
+    private final ScheduledExecutorService journalFlusher;
+    private final Set<String> journaled = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Integer, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger sessionIds = new AtomicInteger();
 
     /**
      * Class constructor, specifying what {@link Downloader} to use, number of threads,
@@ -34,10 +56,156 @@ public class WebCrawler implements Crawler {
      *                    host simultaneously
      */
     public WebCrawler(Downloader downloader, int downloaders, int extractors, int perHost) {
+        this(downloader, downloaders, extractors, perHost, new CrawlerOptions());
+    }
+
+    /**
+     * Class constructor, same as {@link #WebCrawler(Downloader, int, int, int)}, but with
+     * additional {@code options}.
+     *
+     * @param downloader  downloader, which will be used to get web-page
+     * @param downloaders number of threads for downloading
+     * @param extractors  number of threads for extracting links
+     * @param perHost     maximal number of threads, which can download from the same
+     *                    host simultaneously
+     * @param options     additional settings of crawler
+     */
+    public WebCrawler(Downloader downloader, int downloaders, int extractors, int perHost, CrawlerOptions options) {
         this.downloader = downloader;
-        this.perHost = perHost;
-        downloadThreadPool = Executors.newFixedThreadPool(downloaders);
+        Frontier frontier = new Frontier(options.getFrontierBudget(), options.getFrontierSpill());
+        metrics = new CrawlerMetrics(frontier);
+        mode = options.getMode();
+        journalDirectory = options.getJournal();
+        journalInterval = options.getJournalInterval();
+        if (journalDirectory != null && mode != CrawlerOptions.Mode.PIPELINE) {
+            throw new IllegalArgumentException("Crawl journal is supported only in PIPELINE mode");
+        }
+        journalFlusher = journalDirectory == null ? null : Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pipelineInFlight = options.getPipelineInFlight() > 0 ? options.getPipelineInFlight() : 2 * (downloaders + extractors);
+        expectedUrls = options.getExpectedUrls();
+        visitedBloomBits = options.getVisitedBloomBits();
+        offHeapVisited = options.isOffHeapVisited();
+        downloadThreadPool = options.isVirtualThreads() ? newVirtualThreadExecutor() : Executors.newFixedThreadPool(downloaders);
         extractThreadPool = Executors.newFixedThreadPool(extractors);
+        scheduler = new HostScheduler(perHost, options.isAdaptivePerHost(), options.getMaxDownloads(), frontier, metrics, (host, link) -> {
+            Session session = sessions.get(link.session);
+            if (session != null && link.error != null) {
+                session.lost(link.url, link.lost, link.error);
+                return false;
+            }
+            return session != null && session.dispatch(host, link.url, link.depth);
+        }, downloadThreadPool);
+        extractBudget = options.getExtractorCpuBudget() > 0 ? new CpuBudget(options.getExtractorCpuBudget()) : null;
+        metricsName = registerMetrics();
+    }
+
+    /**
+     * Registers metrics of crawler in platform MBean server.
+     *
+     * @return name of registered metrics, or {@code null} if they weren't registered
+     */
+    private ObjectName registerMetrics() {
+        try {
+            ObjectName name = new ObjectName("ru.ifmo.ctddev.zemskov.crawler:type=WebCrawler,id=" + CRAWLER_IDS.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            return name;
+        } catch (JMException e) {
+            System.err.println("Couldn't register crawler metrics: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns live metrics of crawler, which are also available via JMX
+     * as {@code ru.ifmo.ctddev.zemskov.crawler:type=WebCrawler,id=<number>}.
+     *
+     * @return metrics of crawler
+     */
+    public CrawlerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Creates executor, which starts new virtual thread for every task. Virtual threads are available
+     * since Java 21, so executor is looked up reflectively.
+     *
+     * @throws IllegalStateException if virtual threads aren't supported by this Java version
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads aren't supported by this Java version");
+        }
+    }
+
+    /**
+     * Downloads page and records its latency.
+     */
+    private Document download(String host, String url) throws IOException {
+        long started = metrics.downloading();
+        boolean success = false;
+        try {
+            Document document = memoize(downloader.download(url));
+            success = true;
+            return document;
+        } finally {
+            metrics.downloaded(host, started, success);
+            scheduler.completed(host, System.nanoTime() - started, success);
+        }
+    }
+
+    /**
+     * Wraps document, so its links are extracted only once, however many times they are requested.
+     */
+    private Document memoize(Document document) {
+        return new Document() {
+            private List<String> links;
+
+            @Override
+            public synchronized List<String> extractLinks() throws IOException {
+                if (links == null) {
+                    links = WebCrawler.this.extractLinks(document);
+                }
+                return links;
+            }
+        };
+    }
+
+    /**
+     * Extracts links of document within CPU budget of extractors.
+     */
+    private List<String> extractLinks(Document document) throws IOException {
+        metrics.extracting();
+        List<String> links = null;
+        try {
+            links = budgetedExtractLinks(document);
+            return links;
+        } finally {
+            metrics.extracted(links == null ? 0 : links.size(), links != null);
+        }
+    }
+
+    private List<String> budgetedExtractLinks(Document document) throws IOException {
+        if (extractBudget == null) {
+            return document.extractLinks();
+        }
+        try {
+            extractBudget.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Extraction was interrupted");
+        }
+        long start = extractBudget.time();
+        try {
+            return document.extractLinks();
+        } finally {
+            extractBudget.charge(extractBudget.time() - start);
+        }
     }
 
     /**
@@ -51,38 +219,41 @@ public class WebCrawler implements Crawler {
      */
     @Override
     public Result download(String url, int depth) {
-        BlockingQueue<Pair<Future<String>, String>> queue = new LinkedBlockingQueue<>();
-        List<String> result = new ArrayList<>();
-        Map<String, IOException> errors = new HashMap<>();
-        try {
-            try {
-                hostCount.put(URLUtils.getHost(url), 1);
-            } catch (IOException e) {
-                errors.put(url, e);
-            }
-            queue.add(new Pair<>(downloadThreadPool.submit(() -> processDownloader(url, 1, depth, queue)), url));
-            while (!queue.isEmpty()) {
-                Pair<Future<String>, String> pair = queue.take();
-                String res;
-                try {
-                    res = pair.getFirst().get();
-                } catch (ExecutionException e) {
-                    if (e.getCause() instanceof IOException) {
-                        errors.put(pair.getSecond(), (IOException) e.getCause());
-                        continue;
-                    }
-                    throw e;
-                }
-                if (res != null && !errors.containsKey(res)) {
-                    result.add(res);
-                }
-            }
-            return new Result(result, errors);
-        } catch (Exception e) {
-            return null;
+        switch (mode) {
+            case LEVEL:
+                return new LevelCrawl(depth).run(url);
+            case PIPELINE:
+                return new Pipeline(depth).run(url);
+            default:
+                return new QueueCrawl(depth).run(url);
         }
     }
 
+    /**
+     * Crawls every url of {@code urls} to {@code depth}, as {@link #download(String, int)} does, but all crawls
+     * run simultaneously as asynchronous pipelines, sharing threads, host limits and the limit of pages
+     * in flight, and the calling thread doesn't wait for them. Every crawl has its own set of visited pages,
+     * which starts small and grows with the crawl, expected number of URLs and Bloom filter of options
+     * are used only by single crawls. Equal urls are crawled once.
+     * Result of every crawl is passed to {@code consumer} as soon as the crawl finishes, result is
+     * {@code null} if crawler was closed before the end of crawl.
+     *
+     * @param urls     urls, specifying starting positions of crawls
+     * @param depth    maximal depth of web-pages, which will be visited by every crawl
+     * @param consumer consumer of url of every crawl and its result, it is called by threads of crawler
+     * @return future, which completes after all results are consumed
+     */
+    public CompletableFuture<Void> download(Collection<String> urls, int depth, BiConsumer<String, Result> consumer) {
+        TaskLimiter inFlight = new TaskLimiter(pipelineInFlight, downloadThreadPool);
+        Map<String, CompletableFuture<Result>> crawls = new HashMap<>();
+        List<CompletableFuture<Void>> consumed = new ArrayList<>();
+        for (String url : urls) {
+            CompletableFuture<Result> crawl = crawls.computeIfAbsent(url, u -> new Pipeline(depth, inFlight).start(u));
+            consumed.add(crawl.thenAccept(result -> consumer.accept(url, result)));
+        }
+        return CompletableFuture.allOf(consumed.toArray(new CompletableFuture<?>[0]));
+    }
+
     /**
      * Shutdowns all threads, created by crawler. All invocations of {@link
      * #download(String, int)}, that didn't finish yet, will return {@code null}
@@ -92,54 +263,693 @@ public class WebCrawler implements Crawler {
     public void close() {
         downloadThreadPool.shutdown();
         extractThreadPool.shutdown();
+        if (journalFlusher != null) {
+            journalFlusher.shutdown();
+        }
+        if (metricsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+            } catch (JMException e) {
+                System.err.println("Couldn't unregister crawler metrics: " + e.getMessage());
+            }
+        }
+        try {
+            scheduler.close();
+        } catch (IOException e) {
+            System.err.println("Couldn't delete spilled frontier: " + e.getMessage());
+        }
     }
 
+    /**
+     * State of one crawl. Links of session wait for their hosts in {@link Frontier} as compact records,
+     * which refer to session by its id. Every session has its own set of downloaded pages.
+     * <p>
+     * URLs, which are equal after normalization, are fetched only once, but every reached URL is reported
+     * on its own: it gets outcome of the fetched one, so it is downloaded, unless the fetched one failed.
+     */
+    private abstract class Session {
+        final int id = sessionIds.incrementAndGet();
+        final int maxDepth;
+
+        Session(int maxDepth) {
+            this.maxDepth = maxDepth;
+            sessions.put(id, this);
+        }
 
-    private void processExtractor(Document document, int depth, int maxDepth, BlockingQueue<Pair<Future<String>, String>> queue) throws IOException, InterruptedException {
-        List<String> links;
-        links = document.extractLinks();
-        for (String link : links) {
-            synchronized (hostCount) {
-                hostCount.putIfAbsent(URLUtils.getHost(link), 0);
-                if (hostCount.get(URLUtils.getHost(link)) < perHost) {
-                    hostCount.compute(URLUtils.getHost(link), (s, i) -> i + 1);
-                    queue.add(new Pair<>(downloadThreadPool.submit(() -> processDownloader(link, depth + 1, maxDepth, queue)), link));
+        /**
+         * Puts link to the frontier, it is dispatched when its host has free permit.
+         */
+        void schedule(String url, String host, int depth) {
+            scheduler.submit(host, new Frontier.Link(url, depth, id));
+        }
+
+        /**
+         * Starts download of link, for which permit of its host is acquired.
+         * Permit must be released by {@link HostScheduler#release(String)} after download.
+         *
+         * @return {@code false} if link was dropped and permit wasn't used
+         */
+        abstract boolean dispatch(String host, String url, int depth);
+
+        /**
+         * Records error of {@code count} scheduled links, which were lost by the frontier,
+         * {@code url} is the first of them.
+         */
+        abstract void lost(String url, int count, IOException e);
+
+        void end() {
+            sessions.remove(id);
+        }
+
+        /**
+         * Builds result of session. Reached URL, which isn't failed itself, fails with error of
+         * URL with the same normalized form, as only one of them was fetched.
+         *
+         * @param reached all reached URLs, every URL is listed once
+         * @param errors  errors of failed URLs, errors of reached URLs are added to it
+         */
+        Result result(Collection<String> reached, Map<String, IOException> errors) {
+            Map<Long, IOException> failed = new HashMap<>();
+            errors.forEach((url, e) -> failed.putIfAbsent(fetchKey(url), e));
+            List<String> list = new ArrayList<>();
+            for (String url : reached) {
+                if (errors.containsKey(url)) {
+                    continue;
+                }
+                IOException e = failed.isEmpty() ? null : failed.get(fetchKey(url));
+                if (e != null) {
+                    errors.put(url, e);
                 } else {
-                    left.putIfAbsent(URLUtils.getHost(link), new LinkedBlockingQueue<>());
-                    left.get(URLUtils.getHost(link)).put(() -> {
-                        try {
-                            return processDownloader(link, depth + 1, maxDepth, queue);
-                        } catch (Exception e) {
-                            System.err.println("Some problem during downloading: " + e.getMessage());
+                    list.add(url);
+                }
+            }
+            return new Result(list, errors);
+        }
+    }
+
+    /**
+     * Returns key of URL for deduplication of fetches: fingerprint of its normalized form.
+     */
+    private static long fetchKey(String url) {
+        return VisitedSet.fingerprint(VisitedSet.normalize(url));
+    }
+
+    /**
+     * Every download and extraction is a future, which is put to the queue, the calling
+     * thread takes futures one by one until queue is empty and no link waits for its host.
+     */
+    private class QueueCrawl extends Session {
+        private final VisitedSet fetched = new VisitedSet(expectedUrls, visitedBloomBits, offHeapVisited);
+        private final BlockingQueue<Pair<Future<String>, String>> queue = new LinkedBlockingQueue<>();
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        private QueueCrawl(int maxDepth) {
+            super(maxDepth);
+        }
+
+        private Result run(String url) {
+            List<String> result = new ArrayList<>();
+            Map<String, IOException> errors = new HashMap<>();
+            try {
+                try {
+                    schedule(url, hosts.getHost(url), 1);
+                } catch (IOException e) {
+                    errors.put(url, e);
+                }
+                while (!queue.isEmpty() || waiting.get() > 0) {
+                    Pair<Future<String>, String> pair = queue.take();
+                    String res;
+                    try {
+                        res = pair.getFirst().get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof IOException) {
+                            errors.put(pair.getSecond(), (IOException) e.getCause());
+                            continue;
+                        }
+                        throw e;
+                    }
+                    if (res != null) {
+                        result.add(res);
+                    }
+                }
+                return result(new LinkedHashSet<>(result), errors);
+            } catch (Exception e) {
+                return null;
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        void schedule(String url, String host, int depth) {
+            waiting.incrementAndGet();
+            super.schedule(url, host, depth);
+        }
+
+        @Override
+        boolean dispatch(String host, String url, int depth) {
+            try {
+                queue.add(new Pair<>(downloadThreadPool.submit(() -> processDownloader(url, host, depth)), url));
+            } finally {
+                waiting.decrementAndGet();
+            }
+            return true;
+        }
+
+        @Override
+        void lost(String url, int count, IOException e) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            queue.add(new Pair<>(failed, url));
+            waiting.addAndGet(-count);
+        }
+
+        private void processExtractor(Document document, int depth) throws IOException {
+            for (String link : document.extractLinks()) {
+                if (fetched.contains(link)) {
+                    queue.add(new Pair<>(CompletableFuture.completedFuture(link), link));
+                } else {
+                    schedule(link, hosts.getHost(link), depth + 1);
+                }
+            }
+        }
+
+        private String processDownloader(String url, String host, int depth) throws IOException, InterruptedException {
+            try {
+                if (fetched.add(url)) {
+                    Document document = download(host, url);
+                    if (depth < maxDepth) {
+                        queue.put(new Pair<>(extractThreadPool.submit(() -> {
+                            processExtractor(document, depth);
                             return null;
+                        }), url));
+                    }
+                }
+            } finally {
+                scheduler.release(host);
+            }
+            return url;
+        }
+    }
+
+    /**
+     * Crawls level by level: all pages of the current frontier are downloaded and extracted in parallel,
+     * workers count completions themselves and only the last one wakes up the calling thread,
+     * which builds the next frontier from deduplicated links.
+     */
+    private class LevelCrawl extends Session {
+        private final VisitedSet fetched = new VisitedSet(expectedUrls, visitedBloomBits, offHeapVisited);
+        private final Queue<String> result = new ConcurrentLinkedQueue<>();
+        private final Map<String, IOException> errors = new ConcurrentHashMap<>();
+        private volatile Completion phase;
+        private volatile Queue<String> next;
+        private volatile boolean extract;
+
+        private LevelCrawl(int maxDepth) {
+            super(maxDepth);
+        }
+
+        private Result run(String url) {
+            VisitedSet seen = VisitedSet.exact(0);
+            List<String> frontier = Collections.singletonList(url);
+            seen.add(url);
+            try {
+                for (int level = 1; level <= maxDepth && !frontier.isEmpty(); level++) {
+                    next = new ConcurrentLinkedQueue<>();
+                    phase = new Completion();
+                    extract = level < maxDepth;
+                    for (String link : frontier) {
+                        if (!fetched.add(link)) {
+                            result.add(link);
+                            continue;
+                        }
+                        try {
+                            String host = hosts.getHost(link);
+                            phase.start();
+                            schedule(link, host, level);
+                        } catch (IOException e) {
+                            errors.put(link, e);
+                        }
+                    }
+                    phase.await();
+                    frontier = new ArrayList<>();
+                    for (String link : next) {
+                        if (seen.add(link)) {
+                            frontier.add(link);
                         }
-                    });
+                    }
                 }
+                return result(result, errors);
+            } catch (InterruptedException | RejectedExecutionException e) {
+                return null;
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        boolean dispatch(String host, String link, int depth) {
+            Completion phase = this.phase;
+            Queue<String> next = this.next;
+            boolean extract = this.extract;
+            phase.execute(downloadThreadPool, () -> {
+                try {
+                    Document document = download(host, link);
+                    result.add(link);
+                    if (extract) {
+                        phase.start();
+                        phase.execute(extractThreadPool, () -> {
+                            try {
+                                next.addAll(document.extractLinks());
+                            } catch (IOException e) {
+                                errors.put(link, e);
+                            } finally {
+                                phase.finish();
+                            }
+                        });
+                    }
+                } catch (IOException e) {
+                    errors.put(link, e);
+                } finally {
+                    scheduler.release(host);
+                    phase.finish();
+                }
+            });
+            return true;
+        }
+
+        @Override
+        void lost(String url, int count, IOException e) {
+            Completion phase = this.phase;
+            errors.put(url, e);
+            for (int i = 0; i < count; i++) {
+                phase.finish();
             }
         }
     }
 
-    private String processDownloader(String url, int depth, int maxDepth, BlockingQueue<Pair<Future<String>, String>> queue) throws IOException, InterruptedException {
-        if (downloaded.add(url)) {
-            Document document = downloader.download(url);
-            if (depth < maxDepth) {
-                queue.put(new Pair<>(extractThreadPool.submit(() -> {
-                    processExtractor(document, depth, maxDepth, queue);
-                    return null;
-                }), url));
+
+    /**
+     * Counter of unfinished tasks of one crawl or crawl level, which is awaited by the calling thread.
+     */
+    private static class Completion {
+        private final AtomicInteger remaining = new AtomicInteger(1);
+        private final Thread owner = Thread.currentThread();
+        private volatile boolean rejected = false;
+        private volatile Runnable done;
+
+        private void start() {
+            remaining.incrementAndGet();
+        }
+
+        private void finish() {
+            if (remaining.decrementAndGet() == 0) {
+                Runnable done = this.done;
+                if (done == null) {
+                    LockSupport.unpark(owner);
+                } else {
+                    done.run();
+                }
             }
         }
 
-        synchronized (hostCount) {
-            BlockingQueue<Supplier<String>> q = left.get(URLUtils.getHost(url));
-            if (q != null && !q.isEmpty()) {
-                Supplier<String> supplier = q.take();
-                queue.put(new Pair<>(downloadThreadPool.submit(supplier::get), url));
+        private void reject() {
+            rejected = true;
+            finish();
+        }
+
+        private void execute(ExecutorService executor, Runnable task) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                reject();
+            }
+        }
+
+        /**
+         * Runs {@code done} by the thread, which finishes the last task, instead of waiting.
+         */
+        private void then(Runnable done) {
+            this.done = done;
+            finish();
+        }
+
+        private void await() throws InterruptedException {
+            finish();
+            while (remaining.get() > 0) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            if (rejected) {
+                throw new RejectedExecutionException("Crawler is closed");
+            }
+        }
+    }
+
+    /**
+     * Crawl as asynchronous pipeline: download, extract, filter, enqueue. Download and extraction
+     * are continuations on their own executors, filtering and enqueueing of links are done right
+     * after extraction. Number of pages between start of download and end of extraction is bounded,
+     * pages over the limit wait before downloading, so extraction can't fall behind unboundedly.
+     * <p>
+     * If journal directory is set, progress of crawl is recorded to {@link CrawlJournal}.
+     * Crawl, which didn't finish, is resumed from its journal by the next invocation with the same
+     * url and depth: pages, which were downloaded and extracted, aren't downloaded again.
+     * Journal of finished crawl is deleted. Crawl isn't journaled, if another crawl with the same url
+     * and depth is journaled at the moment. All journals are written by one thread of crawler.
+     * <p>
+     * As pages are processed out of depth order, every page remembers its best known depth.
+     * If page is reached by shorter path after being processed, its links are propagated again,
+     * so result is the same as for breadth-first crawl. Documents aren't kept after download,
+     * so page, which was downloaded at the depth limit, is downloaded again, if it is reached by shorter path.
+     * States of pages are keyed by fingerprints of their normalized URLs, so URLs aren't retained for
+     * deduplication, and URL, which differs from fetched one only by normalization, shares its page.
+     */
+    private class Pipeline extends Session {
+        private final VisitedSet downloaded;
+        private final Set<String> result = ConcurrentHashMap.newKeySet();
+        private final Map<String, IOException> errors = new ConcurrentHashMap<>();
+        private final Map<Long, Page> pages = new ConcurrentHashMap<>();
+        private final Completion completion = new Completion();
+        private final TaskLimiter inFlight;
+        private CrawlJournal journal;
+        private String journalKey;
+
+        private Pipeline(int maxDepth) {
+            super(maxDepth);
+            this.downloaded = VisitedSet.exact(expectedUrls, offHeapVisited);
+            this.inFlight = new TaskLimiter(pipelineInFlight, downloadThreadPool);
+        }
+
+        /**
+         * Creates crawl of batch, which starts with small set of downloaded pages.
+         */
+        private Pipeline(int maxDepth, TaskLimiter inFlight) {
+            super(maxDepth);
+            this.downloaded = VisitedSet.exact(0, offHeapVisited);
+            this.inFlight = inFlight;
+        }
+
+        private Result run(String url) {
+            begin(url);
+            try {
+                completion.await();
+            } catch (InterruptedException | RejectedExecutionException e) {
+                end();
+                closeJournal(false);
+                return null;
+            }
+            return complete();
+        }
+
+        private CompletableFuture<Result> start(String url) {
+            CompletableFuture<Result> future = new CompletableFuture<>();
+            begin(url);
+            completion.then(() -> future.complete(complete()));
+            return future;
+        }
+
+        private void begin(String url) {
+            CrawlJournal.Replay replay = new CrawlJournal.Replay();
+            if (journalDirectory != null) {
+                String key = maxDepth + " " + url;
+                if (!journaled.add(key)) {
+                    System.err.println("Crawl of " + url + " is already journaled, crawling without journal");
+                } else {
+                    try {
+                        journal = CrawlJournal.open(journalDirectory, url, maxDepth, journalFlusher, journalInterval, replay);
+                        journalKey = key;
+                    } catch (IOException | RejectedExecutionException e) {
+                        journaled.remove(key);
+                        System.err.println("Couldn't open crawl journal, crawling without it: " + e.getMessage());
+                    }
+                }
+            }
+            if (replay.depths.isEmpty()) {
+                offer(url, 1);
             } else {
-                hostCount.compute(URLUtils.getHost(url), (s, integer) -> integer - 1);
+                restore(replay);
+            }
+        }
+
+        private Result complete() {
+            end();
+            if (completion.rejected) {
+                closeJournal(false);
+                return null;
+            }
+            closeJournal(true);
+            return result(result, errors);
+        }
+
+        /**
+         * Restores pages from journal. Page is fetched again, unless it failed, was extracted,
+         * or was downloaded at the depth limit. Other URLs of page are reached, as page is fetched once.
+         */
+        private void restore(CrawlJournal.Replay replay) {
+            result.addAll(replay.downloaded);
+            errors.putAll(replay.errors);
+            replay.depths.forEach((url, depth) -> {
+                downloaded.add(url);
+                pages.computeIfAbsent(fetchKey(url), key -> new Page(depth)).improve(depth, maxDepth);
+            });
+            Set<Long> decided = new HashSet<>();
+            replay.errors.keySet().forEach(url -> decided.add(fetchKey(url)));
+            replay.depths.forEach((url, depth) -> {
+                long key = fetchKey(url);
+                Page page = pages.get(key);
+                if (replay.extracted.contains(url) || replay.downloaded.contains(url) && page.depth >= maxDepth) {
+                    page.dropped();
+                    decided.add(key);
+                }
+            });
+            replay.depths.forEach((url, depth) -> {
+                long key = fetchKey(url);
+                if (decided.add(key)) {
+                    enqueue(url, pages.get(key));
+                } else {
+                    result.add(url);
+                }
+            });
+        }
+
+        private void closeJournal(boolean finished) {
+            if (journal == null) {
+                return;
+            }
+            try {
+                if (finished) {
+                    journal.delete();
+                } else {
+                    journal.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Couldn't close crawl journal: " + e.getMessage());
+            } finally {
+                journaled.remove(journalKey);
+            }
+        }
+
+        private void offer(String url, int depth) {
+            boolean reached = downloaded.add(url);
+            Page page = new Page(depth);
+            Page old = pages.putIfAbsent(fetchKey(url), page);
+            if (old == null) {
+                if (journal != null) {
+                    journal.enqueued(url, depth);
+                }
+                enqueue(url, page);
+                return;
+            }
+            if (reached) {
+                // page is fetched by another URL, this one gets its outcome in the result
+                result.add(url);
+                if (journal != null) {
+                    journal.enqueued(url, depth);
+                }
+            }
+            improve(url, old, depth);
+        }
+
+        private void enqueue(String url, Page page) {
+            String host;
+            try {
+                host = hosts.getHost(url);
+            } catch (IOException e) {
+                fail(url, e);
+                return;
+            }
+            completion.start();
+            schedule(url, host, page.depth);
+        }
+
+        @Override
+        boolean dispatch(String host, String url, int depth) {
+            Page page = pages.get(fetchKey(url));
+            inFlight.submit(() -> fetch(host, url)
+                    .whenComplete((document, e) -> scheduler.release(host))
+                    .thenAcceptAsync(document -> {
+                        result.add(url);
+                        if (journal != null) {
+                            journal.downloaded(url);
+                        }
+                        if (page.downloaded(maxDepth)) {
+                            extract(url, page, document);
+                        }
+                    }, extractThreadPool)
+                    .whenComplete((v, e) -> {
+                        inFlight.release();
+                        finish(url, e);
+                    }));
+            return true;
+        }
+
+        @Override
+        void lost(String url, int count, IOException e) {
+            fail(url, e);
+            for (int i = 0; i < count; i++) {
+                completion.finish();
+            }
+        }
+
+        private void improve(String url, Page page, int depth) {
+            Page.Action action = page.improve(depth, maxDepth);
+            if (action != Page.Action.IGNORE && journal != null) {
+                journal.enqueued(url, depth);
+            }
+            switch (action) {
+                case PROPAGATE:
+                    propagate(page);
+                    break;
+                case FETCH:
+                    enqueue(url, page);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void extract(String url, Page page, Document document) {
+            List<String> links;
+            try {
+                links = document.extractLinks();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            page.extracted(links);
+            propagate(page);
+            if (journal != null) {
+                journal.extracted(url);
+            }
+        }
+
+        private void propagate(Page page) {
+            int propagated = Integer.MAX_VALUE;
+            int depth;
+            while ((depth = page.depth) < propagated) {
+                for (String link : page.links) {
+                    offer(link, depth + 1);
+                }
+                propagated = depth;
+            }
+        }
+
+        private void finish(String url, Throwable e) {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause == null) {
+                completion.finish();
+            } else if (cause instanceof IOException) {
+                fail(url, (IOException) cause);
+                completion.finish();
+            } else {
+                completion.reject();
+            }
+        }
+
+        private void fail(String url, IOException e) {
+            errors.put(url, e);
+            if (journal != null) {
+                journal.failed(url, e);
+            }
+        }
+
+        private CompletableFuture<Document> fetch(String host, String url) {
+            if (downloader instanceof AsyncDownloader) {
+                long started = metrics.downloading();
+                return ((AsyncDownloader) downloader).downloadAsync(url)
+                        .whenComplete((document, e) -> {
+                            metrics.downloaded(host, started, e == null);
+                            scheduler.completed(host, System.nanoTime() - started, e == null);
+                        })
+                        .thenApply(WebCrawler.this::memoize);
+            }
+            try {
+                return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return download(host, url);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, downloadThreadPool);
+            } catch (RejectedExecutionException e) {
+                CompletableFuture<Document> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+    }
+
+    /**
+     * State of page in {@link Pipeline}. Document of page is extracted right after download and isn't kept,
+     * so page, which was downloaded at the depth limit or restored from journal, has neither document,
+     * nor links, and it is downloaded again, if it is reached by shorter path.
+     */
+    private static class Page {
+        private enum Action {IGNORE, NONE, PROPAGATE, FETCH}
+
+        private volatile int depth;
+        private List<String> links;
+        private boolean dropped;
+
+        private Page(int depth) {
+            this.depth = depth;
+        }
+
+        /**
+         * Decides, whether downloaded page is extracted, document of page, which isn't extracted, is dropped.
+         */
+        private synchronized boolean downloaded(int maxDepth) {
+            if (depth < maxDepth) {
+                return true;
+            }
+            dropped = true;
+            return false;
+        }
+
+        private synchronized void dropped() {
+            dropped = true;
+        }
+
+        private synchronized void extracted(List<String> links) {
+            this.links = links;
+        }
+
+        private synchronized Action improve(int depth, int maxDepth) {
+            if (depth >= this.depth) {
+                return Action.IGNORE;
+            }
+            this.depth = depth;
+            if (links != null) {
+                return Action.PROPAGATE;
+            }
+            if (dropped && depth < maxDepth) {
+                dropped = false;
+                return Action.FETCH;
             }
+            return Action.NONE;
         }
-        return url;
     }
 
     /**
@@ -0,0 +1,3 @@
+#!/bin/bash
+
+java -cp "./HelloUDPTest.jar:./lib/*:./out/production/HW2.9" ru.ifmo.ctddev.zemskov.helloudp.HelloUDPLoadGenerator $1 $2 $3 $4 $5 $6 $7
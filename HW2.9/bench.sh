@@ -0,0 +1,10 @@
+#!/bin/bash
+
+# Usage: bench.sh [benchmark class [arguments]], runs ServerBenchmark by default
+
+rm -rf out/bench
+mkdir -p out/bench
+javac -d out/bench -cp "./HelloUDPTest.jar:./lib/*" $(find src bench -name "*.java") || exit 1
+CLASS=${1:-ServerBenchmark}
+shift
+java -cp "./out/bench:./HelloUDPTest.jar:./lib/*" ru.ifmo.ctddev.zemskov.helloudp.bench.$CLASS "$@"
@@ -0,0 +1,115 @@
+package ru.ifmo.ctddev.zemskov.helloudp.bench;
+
+import ru.ifmo.ctddev.zemskov.helloudp.HelloUDPServer;
+import ru.ifmo.ctddev.zemskov.helloudp.ServerOptions;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures throughput and latency of {@link HelloUDPServer} on loopback in different modes.
+ * Every client thread sends request from its own socket and waits for the reply before sending
+ * the next one, lost requests are counted and sent again after timeout.
+ * <p>
+ * Usage: ServerBenchmark [threads [clients [seconds [port]]]]
+ *
+ * @author Kirill Zemskov
+ */
+public class ServerBenchmark {
+    private static final int TIMEOUT = 100;
+
+    /**
+     * Runs benchmark.
+     *
+     * @param args array of string arguments, which must match to "Usage"
+     * @throws InterruptedException if benchmark was interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : 28800;
+
+        Map<String, ServerOptions> configurations = new LinkedHashMap<>();
+        configurations.put("blocking", new ServerOptions());
+        configurations.put("selector", new ServerOptions().mode(ServerOptions.Mode.SELECTOR));
+        configurations.put("blocking, " + threads + " sockets", new ServerOptions().sockets(threads));
+        configurations.put("selector, " + threads + " sockets", new ServerOptions().mode(ServerOptions.Mode.SELECTOR).sockets(threads));
+        configurations.put("batch", new ServerOptions().mode(ServerOptions.Mode.BATCH).sockets(1));
+        configurations.put("batch, " + threads + " sockets", new ServerOptions().mode(ServerOptions.Mode.BATCH).sockets(threads));
+        for (Map.Entry<String, ServerOptions> configuration : configurations.entrySet()) {
+            HelloUDPServer server = new HelloUDPServer(configuration.getValue());
+            server.start(port, threads);
+            try {
+                run(configuration.getKey(), port, clients, seconds);
+            } finally {
+                server.close();
+            }
+            port++;
+        }
+    }
+
+    private static void run(String name, int port, int clients, int seconds) throws InterruptedException {
+        long[][] latencies = new long[clients][];
+        AtomicLong lost = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(clients);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for (int client = 0; client < clients; client++) {
+            int id = client;
+            new Thread(() -> {
+                latencies[id] = load(id, port, deadline, lost);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%-24s %10.0f req/s  p50 %8.1f us  p99 %8.1f us  lost %d%n", name,
+                all.length / (double) seconds, percentile(all, 50), percentile(all, 99), lost.get());
+    }
+
+    private static long[] load(int id, int port, long deadline, AtomicLong lost) {
+        long[] latencies = new long[1 << 16];
+        int count = 0;
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(TIMEOUT);
+            InetAddress address = InetAddress.getLoopbackAddress();
+            byte[] request = ("benchmark" + id + "_0").getBytes(StandardCharsets.UTF_8);
+            DatagramPacket sent = new DatagramPacket(request, request.length, address, port);
+            DatagramPacket received = new DatagramPacket(new byte[request.length + 16], request.length + 16);
+            while (System.nanoTime() < deadline) {
+                long start = System.nanoTime();
+                socket.send(sent);
+                try {
+                    socket.receive(received);
+                } catch (SocketTimeoutException e) {
+                    lost.incrementAndGet();
+                    continue;
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = System.nanoTime() - start;
+            }
+        } catch (IOException e) {
+            System.err.println("Client " + id + " failed: " + e.getMessage());
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(sorted.length * percentile / 100) - 1)] / 1000.0;
+    }
+}
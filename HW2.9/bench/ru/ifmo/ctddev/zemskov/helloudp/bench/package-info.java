@@ -0,0 +1,5 @@
+/**
+ * Loopback benchmarks of {@link ru.ifmo.ctddev.zemskov.helloudp.HelloUDPServer} and
+ * {@link ru.ifmo.ctddev.zemskov.helloudp.HelloUDPClient}
+ */
+package ru.ifmo.ctddev.zemskov.helloudp.bench;
@@ -0,0 +1,83 @@
+package ru.ifmo.ctddev.zemskov.helloudp;
+
+/**
+ * Optional settings of {@link HelloUDPClient}. Every setter returns {@code this},
+ * so options can be chained: {@code new ClientOptions().window(16).timeouts(50, 1000)}.
+ *
+ * @author Kirill Zemskov
+ */
+public class ClientOptions {
+    private int window = 1;
+    private int initialTimeout = 300;
+    private int maxTimeout = 300;
+    private int eventLoops = 0;
+
+    /**
+     * Sets maximal number of requests, which every thread sends without waiting for their responses.
+     * Default is one request at a time.
+     *
+     * @param window maximal number of outstanding requests of thread
+     * @return these options
+     * @throws IllegalArgumentException if window is less than one
+     */
+    public ClientOptions window(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive: " + window);
+        }
+        this.window = window;
+        return this;
+    }
+
+    /**
+     * Sets timeouts of retransmission. Request, which isn't answered during its timeout, is sent again,
+     * and its timeout is doubled, but doesn't exceed {@code max}. Default is 300 milliseconds
+     * for every retransmission.
+     *
+     * @param initial timeout of the first sending of request in milliseconds
+     * @param max     maximal timeout in milliseconds
+     * @return these options
+     * @throws IllegalArgumentException if initial timeout isn't positive or maximal timeout is less than initial
+     */
+    public ClientOptions timeouts(int initial, int max) {
+        if (initial <= 0 || max < initial) {
+            throw new IllegalArgumentException("Timeouts must satisfy 0 < initial <= max: " + initial + ", " + max);
+        }
+        this.initialTimeout = initial;
+        this.maxTimeout = max;
+        return this;
+    }
+
+    /**
+     * Sets number of selector threads, which drive all logical threads of client. Every logical thread
+     * sends requests from its own non-blocking channel, and its requests and timers are handled by one
+     * of selector threads. Zero, which is default, means own OS thread with blocking socket
+     * for every logical thread.
+     *
+     * @param loops number of selector threads
+     * @return these options
+     * @throws IllegalArgumentException if number of selector threads is negative
+     */
+    public ClientOptions eventLoops(int loops) {
+        if (loops < 0) {
+            throw new IllegalArgumentException("Number of event loops must be non-negative: " + loops);
+        }
+        this.eventLoops = loops;
+        return this;
+    }
+
+    int getWindow() {
+        return window;
+    }
+
+    int getInitialTimeout() {
+        return initialTimeout;
+    }
+
+    int getMaxTimeout() {
+        return maxTimeout;
+    }
+
+    int getEventLoops() {
+        return eventLoops;
+    }
+}
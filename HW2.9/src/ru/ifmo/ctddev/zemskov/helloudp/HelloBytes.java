@@ -0,0 +1,138 @@
+package ru.ifmo.ctddev.zemskov.helloudp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte-level encoding of requests and responses, which doesn't create strings.
+ * Request is {@code prefix + thread + "_" + number} in UTF-8, response is {@code "Hello, " + request}.
+ *
+ * @author Kirill Zemskov
+ */
+final class HelloBytes {
+    /**
+     * Prefix of every response.
+     */
+    static final byte[] HELLO = "Hello, ".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Maximal number of bytes of decimal representation of non-negative {@code int}.
+     */
+    static final int MAX_DIGITS = 10;
+
+    private HelloBytes() {
+    }
+
+    /**
+     * Encodes {@code prefix + thread + "_"}, which is the same for all requests of the thread.
+     *
+     * @param prefix prefix of requests
+     * @param thread number of the thread
+     * @return encoded header of requests
+     */
+    static byte[] header(String prefix, int thread) {
+        return (prefix + thread + "_").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds response {@code "Hello, " + request} in new heap buffer.
+     *
+     * @param request buffer with request between position and limit
+     * @return buffer with response, ready to be sent
+     */
+    static ByteBuffer hello(ByteBuffer request) {
+        ByteBuffer response = ByteBuffer.allocate(HELLO.length + request.remaining());
+        response.put(HELLO).put(request);
+        response.flip();
+        return response;
+    }
+
+    /**
+     * Writes decimal representation of non-negative {@code value} to {@code buffer}.
+     *
+     * @param buffer buffer to write to
+     * @param offset position of the first digit
+     * @param value  value to write
+     * @return position after the last digit
+     */
+    static int putDecimal(byte[] buffer, int offset, int value) {
+        int end = offset + digits(value);
+        int position = end;
+        do {
+            buffer[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        return end;
+    }
+
+    /**
+     * Checks whether {@code response} is the response to {@code request}.
+     *
+     * @param response       buffer with response
+     * @param offset         position of response in the buffer
+     * @param length         length of response
+     * @param request        buffer with request
+     * @param requestLength  length of request, which starts at the beginning of the buffer
+     * @return {@code true} if response is {@code "Hello, " + request}
+     */
+    static boolean isResponse(byte[] response, int offset, int length, byte[] request, int requestLength) {
+        if (length != HELLO.length + requestLength) {
+            return false;
+        }
+        for (int i = 0; i < HELLO.length; i++) {
+            if (response[offset + i] != HELLO[i]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < requestLength; i++) {
+            if (response[offset + HELLO.length + i] != request[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns number of request, to which {@code response} answers, if response starts with
+     * {@code "Hello, " + header}.
+     *
+     * @param response buffer with response, which starts at the beginning of the buffer
+     * @param length   length of response
+     * @param header   header of requests of thread
+     * @return number of request, or {@code -1} if response doesn't answer any request with this header
+     */
+    static int requestNumber(byte[] response, int length, byte[] header) {
+        int start = HELLO.length + header.length;
+        if (length <= start || length - start > MAX_DIGITS) {
+            return -1;
+        }
+        for (int i = 0; i < HELLO.length; i++) {
+            if (response[i] != HELLO[i]) {
+                return -1;
+            }
+        }
+        for (int i = 0; i < header.length; i++) {
+            if (response[HELLO.length + i] != header[i]) {
+                return -1;
+            }
+        }
+        long number = 0;
+        for (int i = start; i < length; i++) {
+            int digit = response[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            number = number * 10 + digit;
+        }
+        return number > Integer.MAX_VALUE ? -1 : (int) number;
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
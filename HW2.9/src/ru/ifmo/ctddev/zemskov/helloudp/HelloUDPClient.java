@@ -3,23 +3,52 @@ package ru.ifmo.ctddev.zemskov.helloudp;
 import info.kgeorgiy.java.advanced.hello.HelloClient;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.*;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 /**
  * Basic implementation of {@link HelloClient}. Provides way to send simple messages to some server.
+ * <p>
+ * Every thread sends its requests from its own socket. By default thread waits for response
+ * to the request before sending the next one, and resends request every 300 milliseconds until
+ * the response is received. Window of outstanding requests and timeouts can be set by {@link ClientOptions}.
+ * With {@link ClientOptions#eventLoops(int)} logical threads are driven by few selector threads instead,
+ * so one process can simulate thousands of clients.
  *
  * @author Kirill Zemskov
  */
 public class HelloUDPClient implements HelloClient {
     private static final String USAGE = "Usage: java HelloUDPClient <hostname> <port> <prefix> <requests> <threads>";
-    private static final int TIMEOUT = 300;
+    private final ClientOptions options;
+
+    /**
+     * Creates client, which sends one request at a time from every thread.
+     */
+    public HelloUDPClient() {
+        this(new ClientOptions());
+    }
+
+    /**
+     * Creates client with specified options.
+     *
+     * @param options settings of client
+     */
+    public HelloUDPClient(ClientOptions options) {
+        this.options = options;
+    }
 
     /**
      * Creates {@link HelloUDPClient} and uses it's {@link #start(String, int, String, int, int)} method with arguments
@@ -65,49 +94,274 @@ public class HelloUDPClient implements HelloClient {
      * @see java.net.DatagramPacket
      */
     public void start(String host, int port, String prefix, int requests, int threads) {
-        ExecutorService threadPool = Executors.newFixedThreadPool(threads);
         InetAddress address;
         try {
             address = InetAddress.getByName(host);
         } catch (UnknownHostException e) {
             throw new IllegalStateException("Unknown host: " + e.getMessage());
         }
+        int loops = Math.min(options.getEventLoops(), threads);
+        ExecutorService threadPool = Executors.newFixedThreadPool(loops > 0 ? loops : threads);
         try {
-            for (int thread = 0; thread < threads; thread++) {
-                final int threadId = thread;
-                threadPool.submit(() -> {
-                    try (DatagramSocket socket = new DatagramSocket()) {
-                        socket.setSoTimeout(TIMEOUT);
-                        for (int req = 0; req < requests; req++) {
-                            String request = new String((prefix + threadId + "_" + req).getBytes("UTF8"), "UTF8");
-                            int len = request.getBytes("UTF8").length;
-                            DatagramPacket sendingPacket = new DatagramPacket(request.getBytes("UTF8"), len, address, port);
-                            DatagramPacket receivedPacket = new DatagramPacket(new byte[len + 8], len + 8);
-                            String required = new String(("Hello, " + request).getBytes("UTF8"), "UTF8");
-                            String received = "";
-                            while (!required.equals(received)) {
-                                try {
-                                    socket.send(sendingPacket);
-                                    socket.receive(receivedPacket);
-                                    received = new String(receivedPacket.getData(), 0, receivedPacket.getLength(), Charset.forName("UTF8"));
-                                } catch (IOException e) {
-                                    System.err.println("Error during sending packet");
-                                }
-                            }
-                            System.out.println(received);
+            if (loops > 0) {
+                InetSocketAddress target = new InetSocketAddress(address, port);
+                for (int loop = 0; loop < loops; loop++) {
+                    final int first = loop;
+                    threadPool.submit(() -> runEventLoop(target, prefix, requests, first, threads, loops));
+                }
+            } else {
+                for (int thread = 0; thread < threads; thread++) {
+                    final int threadId = thread;
+                    threadPool.submit(() -> {
+                        try (DatagramSocket socket = new DatagramSocket()) {
+                            exchange(socket, address, port, HelloBytes.header(prefix, threadId), requests);
+                        } catch (SocketException e) {
+                            throw new IllegalStateException("Error during creating socket");
                         }
-
-                    } catch (SocketException e) {
-                        throw new IllegalStateException("Error during creating socket");
-                    } catch (UnsupportedEncodingException e) {
-                        System.err.println("Encoding not supported");
-                    }
-                });
+                    });
+                }
             }
-            threadPool.shutdownNow();
+            threadPool.shutdown();
             threadPool.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             ///ignore
         }
     }
+
+    /**
+     * Sends {@code requests} requests with specified header from the socket and prints their responses.
+     * At most {@link ClientOptions#window(int)} requests are outstanding, every one has its own
+     * retransmission timer, responses are matched to requests in any order.
+     */
+    private void exchange(DatagramSocket socket, InetAddress address, int port, byte[] header, int requests) throws SocketException {
+        DatagramPacket requestPacket = new DatagramPacket(header, 0, address, port);
+        Conversation conversation = new Conversation(header, requests, slot -> {
+            requestPacket.setData(slot.request, 0, slot.length);
+            try {
+                socket.send(requestPacket);
+            } catch (IOException e) {
+                System.err.println("Error during sending packet");
+            }
+        });
+        byte[] response = new byte[HelloBytes.HELLO.length + header.length + HelloBytes.MAX_DIGITS + 1];
+        DatagramPacket receivedPacket = new DatagramPacket(response, response.length);
+        while (!conversation.isDone()) {
+            long nearest = conversation.advance(System.nanoTime());
+            socket.setSoTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(nearest)));
+            try {
+                receivedPacket.setLength(response.length);
+                socket.receive(receivedPacket);
+            } catch (SocketTimeoutException e) {
+                continue;
+            } catch (IOException e) {
+                System.err.println("Error during receiving packet");
+                continue;
+            }
+            conversation.receive(response, receivedPacket.getLength());
+        }
+    }
+
+    /**
+     * Drives logical threads {@code first}, {@code first + step}, ... from the current thread. Every logical
+     * thread has its own non-blocking channel, connected to {@code target}, all channels share one selector,
+     * retransmission timers of all logical threads are kept in one priority queue.
+     */
+    private void runEventLoop(InetSocketAddress target, String prefix, int requests, int first, int threads, int step) {
+        List<DatagramChannel> channels = new ArrayList<>();
+        try (Selector selector = Selector.open()) {
+            for (int thread = first; thread < threads; thread += step) {
+                DatagramChannel channel = DatagramChannel.open();
+                channels.add(channel);
+                channel.configureBlocking(false);
+                channel.connect(target);
+                Conversation conversation = new Conversation(HelloBytes.header(prefix, thread), requests, slot -> {
+                    try {
+                        channel.write(ByteBuffer.wrap(slot.request, 0, slot.length));
+                    } catch (IOException e) {
+                        System.err.println("Error during sending packet");
+                    }
+                });
+                channel.register(selector, SelectionKey.OP_READ, conversation);
+            }
+            ByteBuffer response = ByteBuffer.allocate(HelloBytes.HELLO.length
+                    + HelloBytes.header(prefix, threads).length + HelloBytes.MAX_DIGITS + 1);
+            PriorityQueue<Timer> timers = new PriorityQueue<>(Comparator.comparingLong((Timer timer) -> timer.deadline));
+            long now = System.nanoTime();
+            for (SelectionKey key : selector.keys()) {
+                schedule(timers, (Conversation) key.attachment(), now);
+            }
+            int remaining = channels.size();
+            while (remaining > 0 && !Thread.interrupted()) {
+                selector.select(timers.isEmpty()
+                        ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(timers.peek().deadline - System.nanoTime())));
+                for (SelectionKey key : selector.selectedKeys()) {
+                    DatagramChannel channel = (DatagramChannel) key.channel();
+                    Conversation conversation = (Conversation) key.attachment();
+                    try {
+                        while (!conversation.isDone()) {
+                            response.clear();
+                            int length = channel.read(response);
+                            if (length <= 0) {
+                                break;
+                            }
+                            conversation.receive(response.array(), length);
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Error during receiving packet");
+                    }
+                    if (conversation.isDone()) {
+                        key.cancel();
+                        remaining--;
+                    } else {
+                        schedule(timers, conversation, System.nanoTime());
+                    }
+                }
+                selector.selectedKeys().clear();
+                now = System.nanoTime();
+                while (!timers.isEmpty() && timers.peek().deadline - now <= 0) {
+                    Timer timer = timers.poll();
+                    if (timer.deadline == timer.conversation.deadline && !timer.conversation.isDone()) {
+                        schedule(timers, timer.conversation, now);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Error during creating socket: " + e.getMessage());
+        } finally {
+            for (DatagramChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    //ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends requests of conversation, which are due, and queues timer for its nearest retransmission.
+     * Timers of previous deadlines of conversation become stale and are skipped.
+     */
+    private static void schedule(PriorityQueue<Timer> timers, Conversation conversation, long now) {
+        long nearest = conversation.advance(now);
+        if (nearest != Long.MAX_VALUE && now + nearest != conversation.deadline) {
+            conversation.deadline = now + nearest;
+            timers.add(new Timer(conversation.deadline, conversation));
+        }
+    }
+
+    /**
+     * Requests of one logical thread: window of outstanding requests, which are sent by {@code sender}.
+     */
+    private class Conversation {
+        private final Slot[] slots;
+        private final int requests;
+        private final Consumer<Slot> sender;
+        private int next;
+        private int done;
+        private long deadline;
+
+        private Conversation(byte[] header, int requests, Consumer<Slot> sender) {
+            this.requests = requests;
+            this.sender = sender;
+            slots = new Slot[Math.min(options.getWindow(), requests)];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = new Slot(header);
+            }
+        }
+
+        /**
+         * Fills free slots with next requests and sends requests, whose timers are expired.
+         *
+         * @return time until the nearest expiration of timer in nanoseconds, or {@link Long#MAX_VALUE}
+         * if there are no outstanding requests
+         */
+        private long advance(long now) {
+            long nearest = Long.MAX_VALUE;
+            for (Slot slot : slots) {
+                if (slot.number < 0 && next < requests) {
+                    slot.prepare(next++, options.getInitialTimeout(), now);
+                }
+                if (slot.number >= 0) {
+                    if (slot.deadline - now <= 0) {
+                        slot.arm(options.getMaxTimeout(), now);
+                        sender.accept(slot);
+                    }
+                    nearest = Math.min(nearest, slot.deadline - now);
+                }
+            }
+            return nearest;
+        }
+
+        /**
+         * Prints response, if it answers one of outstanding requests, and frees its slot.
+         */
+        private void receive(byte[] response, int length) {
+            for (Slot slot : slots) {
+                if (slot.number >= 0 && HelloBytes.isResponse(response, 0, length, slot.request, slot.length)) {
+                    slot.number = -1;
+                    done++;
+                    synchronized (System.out) {
+                        System.out.write(response, 0, length);
+                        System.out.println();
+                    }
+                    return;
+                }
+            }
+        }
+
+        private boolean isDone() {
+            return done == requests;
+        }
+    }
+
+    /**
+     * Deadline of the nearest retransmission of conversation.
+     */
+    private static class Timer {
+        private final long deadline;
+        private final Conversation conversation;
+
+        private Timer(long deadline, Conversation conversation) {
+            this.deadline = deadline;
+            this.conversation = conversation;
+        }
+    }
+
+    /**
+     * Outstanding request and its retransmission timer.
+     */
+    private static class Slot {
+        private final byte[] request;
+        private final int header;
+        private int length;
+        private int number = -1;
+        private int timeout;
+        private boolean sent;
+        private long deadline;
+
+        private Slot(byte[] header) {
+            this.header = header.length;
+            request = Arrays.copyOf(header, header.length + HelloBytes.MAX_DIGITS);
+        }
+
+        private void prepare(int number, int timeout, long now) {
+            this.number = number;
+            this.timeout = timeout;
+            sent = false;
+            deadline = now;
+            length = HelloBytes.putDecimal(request, header, number);
+        }
+
+        /**
+         * Starts timer of the next sending, timeout is doubled after every sending except the first one.
+         */
+        private void arm(int maxTimeout, long now) {
+            if (sent) {
+                timeout = (int) Math.min(maxTimeout, 2L * timeout);
+            }
+            sent = true;
+            deadline = now + TimeUnit.MILLISECONDS.toNanos(timeout);
+        }
+    }
 }
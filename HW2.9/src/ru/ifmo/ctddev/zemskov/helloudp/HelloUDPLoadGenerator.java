@@ -0,0 +1,351 @@
+package ru.ifmo.ctddev.zemskov.helloudp;
+
+import java.io.IOException;
+import java.net.*;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntToLongFunction;
+import java.util.function.Predicate;
+
+/**
+ * Open-loop load generator for {@link HelloUDPServer}. Every thread sends requests of {@link HelloUDPClient}
+ * format by fixed schedule, which doesn't depend on responses, so slow responses don't slow down the load.
+ * Latency of request is measured from the time, when request had to be sent by schedule, to the first
+ * response, so delays of sender itself aren't hidden. Request, which isn't answered during timeout,
+ * is sent again, after all retries it is counted as timed out.
+ * <p>
+ * Every thread keeps states only of requests, which may still be answered, in a ring, which is indexed
+ * by number of request, so memory doesn't depend on duration of load.
+ *
+ * @author Kirill Zemskov
+ */
+public class HelloUDPLoadGenerator {
+    private static final String USAGE = "Usage: java HelloUDPLoadGenerator <hostname> <port> <prefix> <rate> <seconds> <threads> [timeout]";
+    private static final int PENDING = 0;
+    private static final int ANSWERED = 1;
+    private static final int TIMED_OUT = 2;
+
+    private final int timeout;
+    private final int retries;
+
+    /**
+     * Creates load generator.
+     *
+     * @param timeout time to wait for response before retry in milliseconds
+     * @param retries maximal number of retries of request
+     */
+    public HelloUDPLoadGenerator(int timeout, int retries) {
+        this.timeout = timeout;
+        this.retries = retries;
+    }
+
+    /**
+     * Runs load generator and prints its report.
+     *
+     * @param args arguments of load, which must match to "Usage"
+     */
+    public static void main(String[] args) {
+        if (args == null || args.length < 6 || args.length > 7 || Arrays.stream(args).anyMatch(Predicate.isEqual(null))) {
+            System.err.println(USAGE);
+            return;
+        }
+        try {
+            int port = Integer.parseInt(args[1]);
+            int rate = Integer.parseInt(args[3]);
+            int seconds = Integer.parseInt(args[4]);
+            int threads = Integer.parseInt(args[5]);
+            int timeout = args.length > 6 ? Integer.parseInt(args[6]) : 300;
+            System.out.println(new HelloUDPLoadGenerator(timeout, 3).run(args[0], port, args[2], rate, seconds, threads));
+        } catch (NumberFormatException e) {
+            System.err.println(USAGE);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Sends {@code rate} requests per second during {@code seconds} seconds from {@code threads} threads
+     * and waits for the last responses. Requests are sent by threads in turn, so every thread sends
+     * every {@code threads}-th request of the common schedule.
+     *
+     * @param host    address to send requests to
+     * @param port    port to send requests to
+     * @param prefix  the prefix of requests
+     * @param rate    total number of requests per second
+     * @param seconds duration of load
+     * @param threads number of threads, every thread sends requests from its own socket
+     * @return report of load
+     * @throws IllegalArgumentException if rate, duration or number of threads isn't positive
+     */
+    public Report run(String host, int port, String prefix, int rate, int seconds, int threads) {
+        if (rate <= 0 || seconds <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Rate, duration and number of threads must be positive");
+        }
+        long total = (long) rate * seconds;
+        if (total / threads >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many requests per thread: " + total / threads);
+        }
+        InetAddress address;
+        try {
+            address = InetAddress.getByName(host);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Unknown host: " + e.getMessage());
+        }
+        Report report = new Report(seconds);
+        long lifetime = TimeUnit.MILLISECONDS.toNanos((long) timeout * (retries + 2));
+        int window = Integer.highestOneBit((int) Math.min(1 << 24, Math.max(16, lifetime * rate / threads / TimeUnit.SECONDS.toNanos(1)))) * 4;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        ExecutorService pool = Executors.newFixedThreadPool(2 * threads);
+        for (int thread = 0; thread < threads; thread++) {
+            DatagramSocket socket;
+            try {
+                socket = new DatagramSocket();
+                socket.setSoTimeout(timeout);
+            } catch (SocketException e) {
+                pool.shutdownNow();
+                throw new IllegalStateException("Error during creating socket");
+            }
+            int requests = (int) (total / threads + (thread < total % threads ? 1 : 0));
+            Load load = new Load(socket, address, port, HelloBytes.header(prefix, thread), requests, window, report);
+            int first = thread;
+            pool.execute(() -> load.send(number -> start + ((long) number * threads + first) * TimeUnit.SECONDS.toNanos(1) / rate));
+            pool.execute(load::receive);
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        return report;
+    }
+
+    /**
+     * Requests of one thread. State of request is kept in slot {@code number % window} of the ring together
+     * with its number, so late response to request, which slot is reused, is ignored. Slot of request,
+     * which is still pending, when its slot is needed for new request, is counted as timed out.
+     */
+    private class Load {
+        private final DatagramSocket socket;
+        private final byte[] header;
+        private final int requests;
+        private final int mask;
+        private final Report report;
+        private final AtomicLongArray states;
+        private final AtomicLongArray scheduled;
+        private final long[] sent;
+        private final int[] attempts;
+        private final byte[] request;
+        private final DatagramPacket packet;
+        private volatile boolean finished;
+        private int lowest;
+
+        private Load(DatagramSocket socket, InetAddress address, int port, byte[] header, int requests, int window,
+                     Report report) {
+            this.socket = socket;
+            this.header = header;
+            this.requests = requests;
+            this.report = report;
+            mask = window - 1;
+            states = new AtomicLongArray(window);
+            scheduled = new AtomicLongArray(window);
+            sent = new long[window];
+            attempts = new int[window];
+            for (int slot = 0; slot < window; slot++) {
+                states.set(slot, state(-1, TIMED_OUT));
+            }
+            request = Arrays.copyOf(header, header.length + HelloBytes.MAX_DIGITS);
+            packet = new DatagramPacket(request, request.length, address, port);
+        }
+
+        private long state(int number, int state) {
+            return (long) number << 2 | state;
+        }
+
+        private boolean isPending(int number) {
+            return states.get(number & mask) == state(number, PENDING);
+        }
+
+        private void timeOut(int number) {
+            if (states.compareAndSet(number & mask, state(number, PENDING), state(number, TIMED_OUT))) {
+                report.timeouts.incrementAndGet();
+            }
+        }
+
+        private void send(IntToLongFunction schedule) {
+            long check = TimeUnit.MILLISECONDS.toNanos(timeout) / 4;
+            long nextCheck = schedule.applyAsLong(0);
+            for (int number = 0; number < requests; number++) {
+                long time = schedule.applyAsLong(number);
+                long now;
+                while ((now = System.nanoTime()) < time) {
+                    LockSupport.parkNanos(time - now);
+                }
+                if (number > mask) {
+                    timeOut(number - mask - 1);
+                }
+                int slot = number & mask;
+                scheduled.set(slot, time);
+                attempts[slot] = 0;
+                states.set(slot, state(number, PENDING));
+                send(number, now);
+                if (now - nextCheck >= 0) {
+                    retry(number + 1, now);
+                    nextCheck = now + check;
+                }
+            }
+            while (lowest < requests) {
+                LockSupport.parkNanos(check);
+                retry(requests, System.nanoTime());
+            }
+            finished = true;
+        }
+
+        private void send(int number, long now) {
+            sent[number & mask] = now;
+            packet.setLength(HelloBytes.putDecimal(request, header.length, number));
+            try {
+                socket.send(packet);
+                report.sent.incrementAndGet();
+            } catch (IOException e) {
+                report.errors.incrementAndGet();
+            }
+        }
+
+        /**
+         * Sends again requests, which weren't answered during timeout, and gives up requests after all retries.
+         */
+        private void retry(int end, long now) {
+            while (lowest < end && !isPending(lowest)) {
+                lowest++;
+            }
+            long limit = TimeUnit.MILLISECONDS.toNanos(timeout);
+            for (int number = lowest; number < end; number++) {
+                int slot = number & mask;
+                if (!isPending(number) || now - sent[slot] < limit) {
+                    continue;
+                }
+                if (attempts[slot] == retries) {
+                    timeOut(number);
+                } else {
+                    attempts[slot]++;
+                    report.retries.incrementAndGet();
+                    send(number, now);
+                }
+            }
+        }
+
+        private void receive() {
+            byte[] response = new byte[HelloBytes.HELLO.length + request.length + 1];
+            DatagramPacket received = new DatagramPacket(response, response.length);
+            try {
+                while (!finished) {
+                    try {
+                        received.setLength(response.length);
+                        socket.receive(received);
+                    } catch (SocketTimeoutException e) {
+                        continue;
+                    } catch (IOException e) {
+                        report.errors.incrementAndGet();
+                        continue;
+                    }
+                    long now = System.nanoTime();
+                    int number = HelloBytes.requestNumber(response, received.getLength(), header);
+                    if (number < 0 || number >= requests) {
+                        continue;
+                    }
+                    long time = scheduled.get(number & mask);
+                    if (states.compareAndSet(number & mask, state(number, PENDING), state(number, ANSWERED))) {
+                        report.latency.record(now - time);
+                        report.received.incrementAndGet();
+                    }
+                }
+            } finally {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * Results of load.
+     */
+    public static class Report {
+        private final int seconds;
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong received = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private Report(int seconds) {
+            this.seconds = seconds;
+        }
+
+        /**
+         * @return number of sent packets, including retries
+         */
+        public long getSent() {
+            return sent.get();
+        }
+
+        /**
+         * @return number of answered requests
+         */
+        public long getReceived() {
+            return received.get();
+        }
+
+        /**
+         * @return number of retries
+         */
+        public long getRetries() {
+            return retries.get();
+        }
+
+        /**
+         * @return number of requests, which weren't answered after all retries
+         */
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        /**
+         * @return number of errors of sockets
+         */
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /**
+         * @return number of answered requests per second of load
+         */
+        public double getThroughput() {
+            return received.get() / (double) seconds;
+        }
+
+        /**
+         * Returns approximate percentile of latency of answered requests.
+         *
+         * @param percentile percentile from 0 to 100
+         * @return latency in milliseconds
+         */
+        public double getLatency(double percentile) {
+            return latency.percentile(percentile);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("throughput %.1f req/s, sent %d, received %d, retries %d, timeouts %d, errors %d, "
+                            + "latency p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms",
+                    getThroughput(), getSent(), getReceived(), getRetries(), getTimeouts(), getErrors(),
+                    getLatency(50), getLatency(99), getLatency(99.9));
+        }
+    }
+}
@@ -2,19 +2,41 @@ package ru.ifmo.ctddev.zemskov.helloudp;
 
 import info.kgeorgiy.java.advanced.hello.HelloServer;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.*;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 /**
  * Server that receives request, processes them and sends responses.
  * Server will reply to every request if the number of threads it is working on allows.
  * The reply will be {@code "Hello, " + received}, where "receive" is the string representation of the request.
+ * Request is copied to reply as bytes, without decoding.
  * <p>
  * Server can be created from the command line with two parameters:
  * port and number of threads.
@@ -26,14 +48,38 @@ import java.util.function.Predicate;
  * Server can be started several times on different ports.
  * <p>
  * To close the server there is the method {@code close}.
+ * <p>
+ * By default every worker thread blocks in receive on the shared socket, other ways to receive
+ * requests can be chosen by {@link ServerOptions}.
  *
  * @author Kirill Zemskov
  * @see #start
  */
 public class HelloUDPServer implements HelloServer{
     private static final String USAGE = "Usage: port number_of_threads";
-    private final ConcurrentLinkedQueue<DatagramSocket> sockets = new ConcurrentLinkedQueue<>();
+    private static final byte[] HELLO = HelloBytes.HELLO;
+    private static final AtomicInteger SERVER_IDS = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Closeable> sockets = new ConcurrentLinkedQueue<>();
     private final ConcurrentLinkedQueue<ExecutorService> services = new ConcurrentLinkedQueue<>();
+    private final ServerOptions options;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private ObjectName metricsName;
+
+    /**
+     * Creates server, which receives requests in blocking worker threads.
+     */
+    public HelloUDPServer() {
+        this(new ServerOptions());
+    }
+
+    /**
+     * Creates server with specified options.
+     *
+     * @param options settings of server
+     */
+    public HelloUDPServer(ServerOptions options) {
+        this.options = options;
+    }
 
     /**
      * Method to create class and execute from the command line. Usage for parameters to provide:
@@ -66,44 +112,472 @@ public class HelloUDPServer implements HelloServer{
      *
      * @param port    number of the port to start server on
      * @param threads number of threads to process requests on
+     * @throws IllegalStateException if request handler is set, but mode isn't {@link ServerOptions.Mode#VIRTUAL},
+     *                               or virtual threads aren't supported by this Java version in this mode
      * @see java.util.concurrent.ExecutorService
      * @see java.net.DatagramSocket
      * @see java.net.DatagramPacket
      */
     public void start(int port, int threads) {
+        if (options.getHandler() != null && options.getMode() != ServerOptions.Mode.VIRTUAL) {
+            throw new IllegalStateException("Request handler requires " + ServerOptions.Mode.VIRTUAL + " mode");
+        }
+        if (metricsName == null) {
+            metricsName = registerMetrics();
+        }
+        int requested = options.getSockets() > 0 ? options.getSockets()
+                : options.getMode() == ServerOptions.Mode.BATCH && isReusePortSupported() ? threads : 1;
+        int count = Math.max(1, Math.min(requested, threads));
+        if (options.getMode() == ServerOptions.Mode.SELECTOR) {
+            List<DatagramChannel> channels = openChannels(port, count);
+            for (int i = 0; i < count; i++) {
+                startSelector(channels.get(i), share(threads, count, i));
+            }
+            return;
+        }
+        if (options.getMode() == ServerOptions.Mode.BATCH) {
+            startBatch(openChannels(port, count), threads);
+            return;
+        }
+        if (options.getMode() == ServerOptions.Mode.VIRTUAL) {
+            ExecutorService handlers = newVirtualThreadExecutor();
+            services.add(handlers);
+            startVirtual(openChannels(port, count), handlers);
+            return;
+        }
         ExecutorService service = Executors.newFixedThreadPool(threads);
-        DatagramSocket socket;
+        services.add(service);
+        List<DatagramSocket> shards = new ArrayList<>();
+        if (count == 1) {
+            DatagramSocket socket;
+            try {
+                socket = new DatagramSocket(port);
+            } catch (SocketException e) {
+                throw new IllegalStateException("Error during creating socket: " + e.getMessage());
+            }
+            sockets.add(socket);
+            shards.add(socket);
+        } else {
+            openChannels(port, count).forEach(channel -> shards.add(channel.socket()));
+        }
+        for (int thread = 0; thread < threads; thread++) {
+            DatagramSocket socket = shards.get(thread % count);
+            int bSize;
+            try {
+                bSize = socket.getReceiveBufferSize();
+            } catch (SocketException e) {
+                throw new IllegalStateException("Error during creating socket: " + e.getMessage());
+            }
+            service.execute(() -> {
+                byte[] buffer = new byte[HELLO.length + bSize];
+                System.arraycopy(HELLO, 0, buffer, 0, HELLO.length);
+                DatagramPacket request = new DatagramPacket(buffer, HELLO.length, bSize);
+                DatagramPacket response = new DatagramPacket(buffer, buffer.length);
+                while (!Thread.interrupted() && !socket.isClosed()) {
+                    try {
+                        request.setData(buffer, HELLO.length, bSize);
+                        socket.receive(request);
+                        long received = System.nanoTime();
+                        metrics.received();
+                        response.setData(buffer, 0, HELLO.length + request.getLength());
+                        response.setAddress(request.getAddress());
+                        response.setPort(request.getPort());
+                        socket.send(response);
+                        long now = System.nanoTime();
+                        metrics.replied(received, now);
+                        metrics.busy(now - received);
+                    } catch (IOException e) {
+                        if (!socket.isClosed()) {
+                            metrics.error();
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns number of threads of {@code index}-th of {@code count} sockets.
+     */
+    private static int share(int threads, int count, int index) {
+        return threads / count + (index < threads % count ? 1 : 0);
+    }
+
+    /**
+     * Opens {@code count} channels, bound to the same port. If there are several channels,
+     * they are bound with {@code SO_REUSEPORT}, so kernel spreads clients among them.
+     */
+    private List<DatagramChannel> openChannels(int port, int count) {
+        SocketOption<Boolean> reusePort = count > 1 ? reusePort() : null;
+        List<DatagramChannel> channels = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                DatagramChannel channel = DatagramChannel.open();
+                sockets.add(channel);
+                if (reusePort != null) {
+                    channel.setOption(reusePort, true);
+                }
+                channel.bind(new InetSocketAddress(port));
+                port = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+                channels.add(channel);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            throw new IllegalStateException("Error during creating socket: " + e.getMessage());
+        }
+        return channels;
+    }
+
+    private static boolean isReusePortSupported() {
+        try {
+            reusePort();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns {@code SO_REUSEPORT} option, which is available since Java 9.
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePort() {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("SO_REUSEPORT isn't supported by this Java version");
+        }
+    }
+
+    /**
+     * Starts server, where selector thread reads requests from non-blocking channel into direct buffers
+     * and passes them to {@code threads} worker threads through bounded queue. Buffers are allocated once
+     * and reused. While all buffers are busy, selector thread stops reading, worker, which frees buffer,
+     * wakes it up. If {@link ServerOptions#sheddingDelay(long) shedding delay} is set, request is dropped,
+     * when the head of the queue waits longer than the delay, so shedding depends on delay of requests,
+     * but not on momentary length of the queue.
+     */
+    private void startSelector(DatagramChannel channel, int threads) {
+        Selector selector;
+        SelectionKey key;
         try {
-            socket = new DatagramSocket(port);
-        } catch (SocketException e) {
+            selector = Selector.open();
+            sockets.add(selector);
+            channel.configureBlocking(false);
+            key = channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
             throw new IllegalStateException("Error during creating socket: " + e.getMessage());
         }
 
-        sockets.add(socket);
+        int capacity = options.getQueueCapacity();
+        long delay = TimeUnit.MILLISECONDS.toNanos(options.getSheddingDelay());
+        int size = options.getPacketSize();
+        BlockingQueue<Request> free = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Request> received = new ArrayBlockingQueue<>(capacity);
+        AtomicBoolean starving = new AtomicBoolean();
+        for (int i = 0; i < capacity; i++) {
+            free.add(new Request(size));
+        }
+        ExecutorService service = Executors.newFixedThreadPool(threads + 1);
         services.add(service);
-        Runnable worker = () -> {
-            while (!Thread.interrupted() && !socket.isClosed()) {
-                try (DatagramSocket sendingSocket = new DatagramSocket()) {
-                    sendingSocket.setSoTimeout(300);
-                    int bSize = socket.getReceiveBufferSize();
-                    DatagramPacket request = new DatagramPacket(new byte[bSize], bSize);
+        service.execute(() -> {
+            try {
+                while (!Thread.interrupted()) {
                     try {
-                        socket.receive(request);
+                        selector.select();
+                        selector.selectedKeys().clear();
+                        if (key.interestOps() == 0 && !starving.get()) {
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                        while (key.interestOps() != 0) {
+                            Request request = free.poll();
+                            if (request == null) {
+                                key.interestOps(0);
+                                starving.set(true);
+                                if (!free.isEmpty() && starving.compareAndSet(true, false)) {
+                                    key.interestOps(SelectionKey.OP_READ);
+                                }
+                                continue;
+                            }
+                            request.buffer.clear();
+                            request.address = channel.receive(request.buffer);
+                            if (request.address == null) {
+                                free.add(request);
+                                break;
+                            }
+                            request.buffer.flip();
+                            request.received = System.nanoTime();
+                            metrics.received();
+                            Request oldest = received.peek();
+                            if (delay > 0 && oldest != null && request.received - oldest.received > delay) {
+                                metrics.shed();
+                                free.add(request);
+                            } else {
+                                metrics.queued(1);
+                                received.add(request);
+                            }
+                        }
                     } catch (IOException e) {
-                        continue;
+                        if (channel.isOpen()) {
+                            metrics.error();
+                        }
+                    }
+                }
+            } catch (ClosedSelectorException | CancelledKeyException e) {
+                //closed
+            }
+        });
+        for (int thread = 0; thread < threads; thread++) {
+            service.execute(() -> {
+                ByteBuffer response = ByteBuffer.allocateDirect(size + HELLO.length).put(HELLO);
+                try {
+                    while (!Thread.interrupted()) {
+                        Request request = received.take();
+                        metrics.queued(-1);
+                        long start = System.nanoTime();
+                        response.clear().position(HELLO.length);
+                        response.put(request.buffer).flip();
+                        try {
+                            if (channel.send(response, request.address) == 0) {
+                                metrics.dropped();
+                            } else {
+                                long now = System.nanoTime();
+                                metrics.replied(request.received, now);
+                                metrics.busy(now - start);
+                            }
+                        } catch (IOException e) {
+                            if (channel.isOpen()) {
+                                metrics.error();
+                            }
+                        }
+                        free.add(request);
+                        if (starving.compareAndSet(true, false)) {
+                            selector.wakeup();
+                        }
                     }
-                    InetAddress clientAddress = request.getAddress();
-                    int clientPort = request.getPort();
-                    String responseString = new String(("Hello, " + new String(request.getData(), 0, request.getLength(), Charset.forName("UTF8"))).getBytes(), "UTF8");
-                    DatagramPacket response = new DatagramPacket(responseString.getBytes("UTF8"), responseString.getBytes().length, clientAddress, clientPort);
-                    sendingSocket.send(response);
-                } catch (IOException e) {
-                    //ignore
+                } catch (InterruptedException e) {
+                    //closed
                 }
+            });
+        }
+    }
+
+    /**
+     * Starts server, where every worker thread has its own selector for one of non-blocking {@code channels}.
+     * If every worker has its own channel, datagram wakes up only the worker, to which kernel delivered it,
+     * otherwise it wakes up all workers of its channel. Woken up worker receives ready requests into ring
+     * of direct buffers, which start with {@code "Hello, "}, so every request becomes response in place, then sends all responses. Size of batch adapts to number
+     * of waiting requests. Responses, which don't fit into send buffer of socket, are dropped.
+     */
+    private void startBatch(List<DatagramChannel> channels, int threads) {
+        List<Selector> selectors = new ArrayList<>();
+        try {
+            for (DatagramChannel channel : channels) {
+                channel.configureBlocking(false);
+            }
+            for (int thread = 0; thread < threads; thread++) {
+                Selector selector = Selector.open();
+                sockets.add(selector);
+                channels.get(thread % channels.size()).register(selector, SelectionKey.OP_READ);
+                selectors.add(selector);
             }
-        };
+        } catch (IOException e) {
+            throw new IllegalStateException("Error during creating socket: " + e.getMessage());
+        }
+        int maxBatch = Math.max(1, options.getBatchSize());
+        int size = options.getPacketSize();
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        services.add(service);
         for (int thread = 0; thread < threads; thread++) {
-            service.execute(worker);
+            DatagramChannel channel = channels.get(thread % channels.size());
+            Selector selector = selectors.get(thread);
+            service.execute(() -> {
+                Request[] ring = new Request[maxBatch];
+                for (int i = 0; i < maxBatch; i++) {
+                    ring[i] = new Request(HELLO.length + size);
+                    ring[i].buffer.put(HELLO);
+                }
+                int batch = 1;
+                try {
+                    while (!Thread.interrupted()) {
+                        try {
+                            selector.select();
+                            selector.selectedKeys().clear();
+                            long start = System.nanoTime();
+                            int received = 0;
+                            while (received < batch) {
+                                Request request = ring[received];
+                                request.buffer.clear().position(HELLO.length);
+                                request.address = channel.receive(request.buffer);
+                                if (request.address == null) {
+                                    break;
+                                }
+                                request.buffer.flip();
+                                request.received = System.nanoTime();
+                                metrics.received();
+                                received++;
+                            }
+                            for (int i = 0; i < received; i++) {
+                                if (channel.send(ring[i].buffer, ring[i].address) == 0) {
+                                    metrics.dropped();
+                                } else {
+                                    metrics.replied(ring[i].received, System.nanoTime());
+                                }
+                            }
+                            metrics.busy(System.nanoTime() - start);
+                            if (received == batch) {
+                                batch = Math.min(maxBatch, batch * 2);
+                            } else if (received < batch / 4) {
+                                batch = Math.max(1, batch / 2);
+                            }
+                        } catch (IOException e) {
+                            if (channel.isOpen()) {
+                                metrics.error();
+                            }
+                        }
+                    }
+                } catch (ClosedSelectorException | CancelledKeyException e) {
+                    //closed
+                }
+            });
+        }
+    }
+
+    /**
+     * Starts server, where one receiver thread per channel reads requests and hands each of them to
+     * request handler in its own virtual thread, so number of threads doesn't limit concurrency.
+     * At most {@link ServerOptions#queueCapacity(int) capacity} requests are handled at once,
+     * further requests are shed.
+     */
+    private void startVirtual(List<DatagramChannel> channels, ExecutorService handlers) {
+        Function<ByteBuffer, CompletableFuture<ByteBuffer>> handler = options.getHandler() != null
+                ? options.getHandler()
+                : request -> CompletableFuture.completedFuture(HelloBytes.hello(request));
+        Semaphore handling = new Semaphore(options.getQueueCapacity());
+        int size = options.getPacketSize();
+        ExecutorService receivers = Executors.newFixedThreadPool(channels.size());
+        services.add(receivers);
+        for (DatagramChannel channel : channels) {
+            receivers.execute(() -> {
+                ByteBuffer request = null;
+                while (!Thread.interrupted() && channel.isOpen()) {
+                    if (request == null) {
+                        request = ByteBuffer.allocate(size);
+                    }
+                    SocketAddress address;
+                    try {
+                        request.clear();
+                        address = channel.receive(request);
+                    } catch (IOException e) {
+                        if (channel.isOpen()) {
+                            metrics.error();
+                        }
+                        continue;
+                    }
+                    long received = System.nanoTime();
+                    metrics.received();
+                    if (!handling.tryAcquire()) {
+                        metrics.shed();
+                        continue;
+                    }
+                    request.flip();
+                    ByteBuffer handled = request;
+                    request = null;
+                    metrics.queued(1);
+                    try {
+                        handlers.execute(() -> handle(channel, address, handled, received, handler, handling));
+                    } catch (RejectedExecutionException e) {
+                        metrics.queued(-1);
+                        handling.release();
+                        return;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs {@code handler} for request and sends its response, when it is ready.
+     */
+    private void handle(DatagramChannel channel, SocketAddress address, ByteBuffer request, long received,
+                        Function<ByteBuffer, CompletableFuture<ByteBuffer>> handler, Semaphore handling) {
+        long start = System.nanoTime();
+        CompletableFuture<ByteBuffer> future;
+        try {
+            future = handler.apply(request);
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        metrics.busy(System.nanoTime() - start);
+        future.whenComplete((response, e) -> {
+            handling.release();
+            metrics.queued(-1);
+            if (e != null) {
+                metrics.error();
+                return;
+            }
+            if (response == null) {
+                return;
+            }
+            try {
+                if (channel.send(response, address) == 0) {
+                    metrics.dropped();
+                } else {
+                    metrics.replied(received, System.nanoTime());
+                }
+            } catch (IOException ex) {
+                if (channel.isOpen()) {
+                    metrics.error();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns executor, which runs every task in new virtual thread. Virtual threads are available
+     * since Java 21, so executor is looked up reflectively.
+     *
+     * @throws IllegalStateException if virtual threads aren't supported by this Java version
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads aren't supported by this Java version");
+        }
+    }
+
+    /**
+     * Reusable buffer for received request.
+     */
+    private static class Request {
+        private final ByteBuffer buffer;
+        private SocketAddress address;
+        private long received;
+
+        private Request(int size) {
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    /**
+     * Returns live metrics of server, which are also available via JMX
+     * as {@code ru.ifmo.ctddev.zemskov.helloudp:type=HelloUDPServer,id=<number>} after start of server.
+     *
+     * @return metrics of server
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    private ObjectName registerMetrics() {
+        try {
+            ObjectName name = new ObjectName("ru.ifmo.ctddev.zemskov.helloudp:type=HelloUDPServer,id=" + SERVER_IDS.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            return name;
+        } catch (JMException e) {
+            System.err.println("Couldn't register server metrics: " + e.getMessage());
+            return null;
         }
     }
 
@@ -111,7 +585,21 @@ public class HelloUDPServer implements HelloServer{
      * Closes server. {@link #start(int, int)} can't be used after invocation of this method.
      */
     public void close() {
-        sockets.forEach(DatagramSocket::close);
+        if (metricsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+            } catch (JMException e) {
+                System.err.println("Couldn't unregister server metrics: " + e.getMessage());
+            }
+            metricsName = null;
+        }
+        sockets.forEach(socket -> {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //ignore
+            }
+        });
         services.forEach(ExecutorService::shutdownNow);
         sockets.clear();
         services.clear();
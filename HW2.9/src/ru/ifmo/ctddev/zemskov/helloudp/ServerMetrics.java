@@ -0,0 +1,215 @@
+package ru.ifmo.ctddev.zemskov.helloudp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live metrics of {@link HelloUDPServer}. Events are recorded to striped counters and lock-free
+ * histogram, so recording is cheap enough to be always on. Getters read current values,
+ * {@link #snapshot()} returns values, which don't change anymore.
+ *
+ * @author Kirill Zemskov
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+    private final LongAdder received = new LongAdder();
+    private final LongAdder replied = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    ServerMetrics() {
+    }
+
+    /**
+     * Records received request.
+     */
+    void received() {
+        received.increment();
+    }
+
+    /**
+     * Records sent response.
+     *
+     * @param receivedAt time of receiving of request by {@link System#nanoTime()}
+     * @param now        current time by {@link System#nanoTime()}
+     */
+    void replied(long receivedAt, long now) {
+        replied.increment();
+        latency.record(now - receivedAt);
+    }
+
+    /**
+     * Records request, which was dropped because of overload.
+     */
+    void shed() {
+        shed.increment();
+    }
+
+    /**
+     * Records response, which wasn't sent.
+     */
+    void dropped() {
+        dropped.increment();
+    }
+
+    /**
+     * Records error of socket.
+     */
+    void error() {
+        errors.increment();
+    }
+
+    /**
+     * Records change of number of waiting requests.
+     *
+     * @param delta change of number of requests
+     */
+    void queued(int delta) {
+        queued.add(delta);
+    }
+
+    /**
+     * Records time, which worker spent on processing.
+     *
+     * @param nanos time in nanoseconds
+     */
+    void busy(long nanos) {
+        busy.add(nanos);
+    }
+
+    /**
+     * Returns current values of metrics, which don't change anymore.
+     *
+     * @return snapshot of metrics
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    @Override
+    public long getReceived() {
+        return received.sum();
+    }
+
+    @Override
+    public long getReplied() {
+        return replied.sum();
+    }
+
+    @Override
+    public long getShed() {
+        return shed.sum();
+    }
+
+    @Override
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getQueued() {
+        return queued.sum();
+    }
+
+    @Override
+    public long getBusyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(busy.sum());
+    }
+
+    @Override
+    public double getLatencyP50() {
+        return latency.percentile(50);
+    }
+
+    @Override
+    public double getLatencyP99() {
+        return latency.percentile(99);
+    }
+
+    /**
+     * Values of metrics at some moment.
+     */
+    public static final class Snapshot implements ServerMetricsMXBean {
+        private final long received;
+        private final long replied;
+        private final long shed;
+        private final long dropped;
+        private final long errors;
+        private final long queued;
+        private final long busyMillis;
+        private final double latencyP50;
+        private final double latencyP99;
+
+        private Snapshot(ServerMetrics metrics) {
+            received = metrics.getReceived();
+            replied = metrics.getReplied();
+            shed = metrics.getShed();
+            dropped = metrics.getDropped();
+            errors = metrics.getErrors();
+            queued = metrics.getQueued();
+            busyMillis = metrics.getBusyMillis();
+            latencyP50 = metrics.getLatencyP50();
+            latencyP99 = metrics.getLatencyP99();
+        }
+
+        @Override
+        public long getReceived() {
+            return received;
+        }
+
+        @Override
+        public long getReplied() {
+            return replied;
+        }
+
+        @Override
+        public long getShed() {
+            return shed;
+        }
+
+        @Override
+        public long getDropped() {
+            return dropped;
+        }
+
+        @Override
+        public long getErrors() {
+            return errors;
+        }
+
+        @Override
+        public long getQueued() {
+            return queued;
+        }
+
+        @Override
+        public long getBusyMillis() {
+            return busyMillis;
+        }
+
+        @Override
+        public double getLatencyP50() {
+            return latencyP50;
+        }
+
+        @Override
+        public double getLatencyP99() {
+            return latencyP99;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("received=%d, replied=%d, shed=%d, dropped=%d, errors=%d, queued=%d, busy=%dms, "
+                            + "latency p50=%.3fms p99=%.3fms",
+                    received, replied, shed, dropped, errors, queued, busyMillis, latencyP50, latencyP99);
+        }
+    }
+}
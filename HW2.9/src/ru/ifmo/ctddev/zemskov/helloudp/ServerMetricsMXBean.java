@@ -0,0 +1,55 @@
+package ru.ifmo.ctddev.zemskov.helloudp;
+
+/**
+ * Metrics of {@link HelloUDPServer}, which are exposed via JMX. All counters are accumulated
+ * since creation of server. Latencies are in milliseconds.
+ *
+ * @author Kirill Zemskov
+ */
+public interface ServerMetricsMXBean {
+    /**
+     * @return number of received requests
+     */
+    long getReceived();
+
+    /**
+     * @return number of sent responses
+     */
+    long getReplied();
+
+    /**
+     * @return number of requests, which were dropped right after receiving because server was overloaded:
+     * the oldest request waited longer than shedding delay, or all request handlers were busy
+     */
+    long getShed();
+
+    /**
+     * @return number of responses, which were dropped because send buffer of socket was full
+     */
+    long getDropped();
+
+    /**
+     * @return number of errors of sockets and request handlers
+     */
+    long getErrors();
+
+    /**
+     * @return number of requests, which wait for worker threads or are being handled by request handlers
+     */
+    long getQueued();
+
+    /**
+     * @return total time, which worker threads spent on processing of requests, in milliseconds
+     */
+    long getBusyMillis();
+
+    /**
+     * @return median time from receiving of request to sending of its response
+     */
+    double getLatencyP50();
+
+    /**
+     * @return 99th percentile of time from receiving of request to sending of its response
+     */
+    double getLatencyP99();
+}
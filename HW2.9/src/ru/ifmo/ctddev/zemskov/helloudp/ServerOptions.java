@@ -0,0 +1,178 @@
+package ru.ifmo.ctddev.zemskov.helloudp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Optional settings of {@link HelloUDPServer}. Every setter returns {@code this},
+ * so options can be chained: {@code new ServerOptions().mode(ServerOptions.Mode.SELECTOR).queueCapacity(4096)}.
+ *
+ * @author Kirill Zemskov
+ */
+public class ServerOptions {
+    /**
+     * Ways to receive requests.
+     */
+    public enum Mode {
+        /**
+         * Every worker thread blocks in receive on the shared socket
+         */
+        BLOCKING,
+        /**
+         * One selector thread reads requests from non-blocking channel and passes them
+         * to worker threads through bounded queue
+         */
+        SELECTOR,
+        /**
+         * Every worker thread waits for its non-blocking channel, drains batch of ready requests,
+         * then sends all responses. By default every worker has its own socket, if {@code SO_REUSEPORT}
+         * is supported
+         */
+        BATCH,
+        /**
+         * Every socket has its own receiver thread, which reads requests and runs handler of every request
+         * in its own virtual thread, so handlers may block. Requires Java 21 or later
+         */
+        VIRTUAL
+    }
+
+    private Mode mode = Mode.BLOCKING;
+    private int queueCapacity = 1024;
+    private int packetSize = 4096;
+    private int sockets = 0;
+    private int batchSize = 64;
+    private long sheddingDelay = 0;
+    private Function<ByteBuffer, CompletableFuture<ByteBuffer>> handler = null;
+
+    /**
+     * Sets way to receive requests, default is {@link Mode#BLOCKING}.
+     *
+     * @param mode way to receive requests
+     * @return these options
+     */
+    public ServerOptions mode(Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * Sets maximal number of received requests, which wait for worker threads in {@link Mode#SELECTOR} mode.
+     * While the queue is full, requests aren't read from the socket. In {@link Mode#VIRTUAL} mode it is
+     * maximal number of requests, which are handled at once, further requests are shed.
+     *
+     * @param capacity capacity of the queue
+     * @return these options
+     */
+    public ServerOptions queueCapacity(int capacity) {
+        this.queueCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * Sets size of preallocated buffers for requests, longer requests are truncated.
+     *
+     * @param size size of buffer in bytes
+     * @return these options
+     */
+    public ServerOptions packetSize(int size) {
+        this.packetSize = size;
+        return this;
+    }
+
+    /**
+     * Sets number of sockets, which are bound to the same port with {@code SO_REUSEPORT}.
+     * Kernel spreads clients among sockets, threads of server are divided among sockets equally,
+     * in {@link Mode#SELECTOR} mode every socket has its own selector thread and queue.
+     * Several sockets require Java 9 or later. Zero, which is default, means one socket, and in
+     * {@link Mode#BATCH} mode one socket per thread, if {@code SO_REUSEPORT} is supported.
+     *
+     * @param sockets number of sockets, it is limited by number of threads
+     * @return these options
+     */
+    public ServerOptions sockets(int sockets) {
+        this.sockets = sockets;
+        return this;
+    }
+
+    /**
+     * Sets maximal number of requests, which are received by worker at once in {@link Mode#BATCH} mode.
+     * Actual batch adapts to number of waiting requests: it doubles, when worker receives full batch,
+     * and halves, when batch is mostly empty.
+     *
+     * @param size maximal size of batch
+     * @return these options
+     */
+    public ServerOptions batchSize(int size) {
+        this.batchSize = size;
+        return this;
+    }
+
+    /**
+     * Sets time, which requests may wait for worker threads in {@link Mode#SELECTOR} mode. While the oldest
+     * waiting request waits longer, new requests are dropped right after receiving, so time of waiting
+     * in the queue stays bounded under overload, while short bursts are still queued. Dropped requests
+     * are counted by {@link ServerMetrics#getShed()}. Zero, which is default, disables shedding.
+     *
+     * @param millis maximal time of waiting in milliseconds
+     * @return these options
+     */
+    public ServerOptions sheddingDelay(long millis) {
+        this.sheddingDelay = millis;
+        return this;
+    }
+
+    /**
+     * Sets handler, which builds response to request in {@link Mode#VIRTUAL} mode. Handler receives request
+     * between position and limit of buffer and returns response in the same way, or {@code null} if there is
+     * no response. Default handler replies {@code "Hello, " + request}, other modes always reply so.
+     *
+     * @param handler handler of requests
+     * @return these options
+     */
+    public ServerOptions handler(Function<ByteBuffer, ByteBuffer> handler) {
+        this.handler = request -> CompletableFuture.completedFuture(handler.apply(request));
+        return this;
+    }
+
+    /**
+     * Sets handler, which completes response to request asynchronously in {@link Mode#VIRTUAL} mode.
+     * Response is sent by the thread, which completes the future.
+     *
+     * @param handler handler of requests
+     * @return these options
+     * @see #handler(Function)
+     */
+    public ServerOptions asyncHandler(Function<ByteBuffer, CompletableFuture<ByteBuffer>> handler) {
+        this.handler = handler;
+        return this;
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    int getPacketSize() {
+        return packetSize;
+    }
+
+    int getSockets() {
+        return sockets;
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    long getSheddingDelay() {
+        return sheddingDelay;
+    }
+
+    Function<ByteBuffer, CompletableFuture<ByteBuffer>> getHandler() {
+        return handler;
+    }
+}